@@ -1,6 +1,7 @@
 from pathlib import Path
 import xml.etree.ElementTree as ET
 import jinja2
+import re
 import sys
 
 tests = [
@@ -20,9 +21,29 @@ tests = [
            ("LivelinessTests", "Żywotność rozwiązania", 1)
 ]
 
+calibration_re = re.compile(r"cubetest calibration: (.*)")
+
+
+def find_calibrations(sol_dir, roots):
+    # CubeTest calibrates the lags for the machine once per JVM. GradeRunner keeps one line
+    # per JVM it ran the classes in (more than one if a class left threads behind) in a
+    # file of its own; runs of one class per JVM have it in the output of each class.
+    calibration_file = sol_dir / "calibration"
+    if calibration_file.exists():
+        calibrations = calibration_re.findall(calibration_file.read_text())
+    else:
+        calibrations = [match.group(1)
+                        for root in roots
+                        for system_out in root.iter("system-out")
+                        for match in [calibration_re.search(system_out.text or "")] if match]
+    calibrations = list(dict.fromkeys(calibration.strip() for calibration in calibrations))
+    return calibrations or ["brak danych"]
+
+
 def main():
     sol_dir = Path(sys.argv[1])
     results = []
+    roots = []
 
     for name, desc, pts in tests:
         xml_file = f"{name}/xml/TEST-concurrentcube.CubeTest${name}.xml"
@@ -35,13 +56,14 @@ def main():
             skipped = int(root.attrib["skipped"])
             passed = (failures == 0 and errors == 0 and skipped == 0)
             results.append((desc, pts if passed else 0))
+            roots.append(root)
         else:
             results.append((desc, 0))
 
     total = sum(pts for desc, pts in results)
 
     t = jinja2.Template(open("report.txt.j2", "r").read())
-    print(t.render({"results": results, "total": total}))
+    print(t.render({"results": results, "total": total, "calibrations": find_calibrations(sol_dir, roots)}))
 
 
 if __name__ == "__main__":
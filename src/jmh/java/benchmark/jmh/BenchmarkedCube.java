@@ -0,0 +1,91 @@
+package benchmark.jmh;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.BiConsumer;
+
+// The operations the benchmarks run, over either the reference cube (impl "solution")
+// or the submission in src/main/java (impl "concurrentcube"), both without callbacks.
+// The submission is looked up by name, so that the benchmarks compile without one;
+// jmh.gradle only passes impl "concurrentcube" when there is one.
+public interface BenchmarkedCube {
+    void rotate(int side, int layer) throws InterruptedException;
+
+    String show() throws InterruptedException;
+
+    static BenchmarkedCube of(String impl, int size) {
+        switch (impl) {
+            case "solution": {
+                solution.Cube cube = new solution.Cube(size, (x, y) -> {
+                }, (x, y) -> {
+                }, () -> {
+                }, () -> {
+                });
+                return new BenchmarkedCube() {
+                    @Override
+                    public void rotate(int side, int layer) {
+                        cube.rotate(side, layer);
+                    }
+
+                    @Override
+                    public String show() {
+                        return cube.show();
+                    }
+                };
+            }
+            case "concurrentcube":
+                return submission(size);
+            default:
+                throw new IllegalArgumentException("unknown cube implementation " + impl);
+        }
+    }
+
+    private static BenchmarkedCube submission(int size) {
+        MethodHandle rotate, show;
+        try {
+            Class<?> cubeClass = Class.forName("concurrentcube.Cube");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodHandle constructor = lookup.findConstructor(cubeClass, MethodType.methodType(void.class,
+                    int.class, BiConsumer.class, BiConsumer.class, Runnable.class, Runnable.class));
+            Object cube = constructor.invoke(size, (BiConsumer<Integer, Integer>) (x, y) -> {
+            }, (BiConsumer<Integer, Integer>) (x, y) -> {
+            }, (Runnable) () -> {
+            }, (Runnable) () -> {
+            });
+            rotate = lookup.findVirtual(cubeClass, "rotate", MethodType.methodType(void.class, int.class, int.class))
+                    .bindTo(cube);
+            show = lookup.findVirtual(cubeClass, "show", MethodType.methodType(String.class)).bindTo(cube);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("no submission (concurrentcube.Cube) to benchmark", e);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("cannot create concurrentcube.Cube", e);
+        }
+
+        return new BenchmarkedCube() {
+            @Override
+            public void rotate(int side, int layer) throws InterruptedException {
+                try {
+                    rotate.invokeExact(side, layer);
+                } catch (InterruptedException | RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public String show() throws InterruptedException {
+                try {
+                    return (String) show.invokeExact();
+                } catch (InterruptedException | RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+}
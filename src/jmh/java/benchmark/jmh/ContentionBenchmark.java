@@ -0,0 +1,75 @@
+package benchmark.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of rotations only, from 1 to 64 threads sharing one cube, either all around
+// one axis (sides 0 and 5, which may run concurrently on different layers) or around
+// random axes (which have to take turns).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentionBenchmark {
+    @Param({ "solution", "concurrentcube" })
+    public String impl;
+
+    @Param({ "16" })
+    public int size;
+
+    @Param({ "same", "cross" })
+    public String axes;
+
+    private BenchmarkedCube cube;
+    private boolean sameAxis;
+
+    @Setup
+    public void setUp() {
+        cube = BenchmarkedCube.of(impl, size);
+        sameAxis = axes.equals("same");
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            random = new SplittableRandom(threadParams.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void threads01(ThreadRandom threadRandom) throws InterruptedException {
+        rotation(threadRandom.random);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void threads04(ThreadRandom threadRandom) throws InterruptedException {
+        rotation(threadRandom.random);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void threads16(ThreadRandom threadRandom) throws InterruptedException {
+        rotation(threadRandom.random);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void threads64(ThreadRandom threadRandom) throws InterruptedException {
+        rotation(threadRandom.random);
+    }
+
+    private void rotation(SplittableRandom random) throws InterruptedException {
+        int side = sameAxis ? 5 * random.nextInt(2) : random.nextInt(6);
+        cube.rotate(side, random.nextInt(size));
+    }
+}
@@ -0,0 +1,73 @@
+package benchmark.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of the operation mix of CubeTest: random rotations with a showProbability
+// share of shows, from 1 to 64 threads sharing one cube.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixBenchmark {
+    private static final double showProbability = 0.2;
+
+    @Param({ "solution", "concurrentcube" })
+    public String impl;
+
+    @Param({ "3" })
+    public int size;
+
+    private BenchmarkedCube cube;
+
+    @Setup
+    public void setUp() {
+        cube = BenchmarkedCube.of(impl, size);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            random = new SplittableRandom(threadParams.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void threads01(ThreadRandom threadRandom) throws InterruptedException {
+        operation(threadRandom.random);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void threads04(ThreadRandom threadRandom) throws InterruptedException {
+        operation(threadRandom.random);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void threads16(ThreadRandom threadRandom) throws InterruptedException {
+        operation(threadRandom.random);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void threads64(ThreadRandom threadRandom) throws InterruptedException {
+        operation(threadRandom.random);
+    }
+
+    private void operation(SplittableRandom random) throws InterruptedException {
+        if (random.nextDouble() > showProbability)
+            cube.rotate(random.nextInt(6), random.nextInt(size));
+        else
+            cube.show();
+    }
+}
@@ -0,0 +1,40 @@
+package benchmark.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// The uncontended cost of one rotate and one show, by cube size.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SingleThreadBenchmark {
+    @Param({ "solution", "concurrentcube" })
+    public String impl;
+
+    @Param({ "3", "16", "128", "1024" })
+    public int size;
+
+    private BenchmarkedCube cube;
+    private SplittableRandom random;
+
+    @Setup
+    public void setUp() {
+        cube = BenchmarkedCube.of(impl, size);
+        random = new SplittableRandom(size);
+    }
+
+    @Benchmark
+    public void rotate() throws InterruptedException {
+        cube.rotate(random.nextInt(6), random.nextInt(size));
+    }
+
+    @Benchmark
+    public String show() throws InterruptedException {
+        return cube.show();
+    }
+}
@@ -0,0 +1,61 @@
+package benchmark;
+
+import solution.AdmissionPolicy;
+import solution.AdmissionProtocol;
+import solution.Cube;
+import solution.CubeOptions;
+
+import java.util.SplittableRandom;
+
+// Compares the throughput of the admission protocols and policies of the reference cube
+// on the operation mix of CubeTest (random rotations with a 20% share of shows).
+public class AdmissionBenchmark {
+    private static final double showProbability = 0.2;
+    private static final int size = 3;
+    private static final int[] threadCounts = { 1, 4, 16, 64 };
+
+    public static void main(String[] args) throws InterruptedException {
+        long sampleMillis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+
+        System.out.printf("%-12s%-16s", "protocol", "policy");
+        for (int numThreads: threadCounts) {
+            System.out.printf("%12s", numThreads + " threads");
+        }
+        System.out.println("   (ops/s)");
+
+        for (AdmissionProtocol protocol: AdmissionProtocol.values()) {
+            for (AdmissionPolicy policy: AdmissionPolicy.values()) {
+                if (protocol == AdmissionProtocol.LOCKS && policy == AdmissionPolicy.BOUNDED_BYPASS)
+                    continue;
+
+                System.out.printf("%-12s%-16s", protocol, policy);
+                for (int numThreads: threadCounts) {
+                    CubeOptions options = new CubeOptions();
+                    options.admissionProtocol = protocol;
+                    options.admissionPolicy = policy;
+                    Cube cube = new Cube(size, options, (x, y) -> {
+                    }, (x, y) -> {
+                    }, () -> {
+                    }, () -> {
+                    });
+
+                    SplittableRandom[] randoms = new SplittableRandom[numThreads];
+                    for (int threadIdx = 0; threadIdx < numThreads; ++threadIdx) {
+                        randoms[threadIdx] = new SplittableRandom(threadIdx);
+                    }
+
+                    double opsPerSec = Throughput.measure(numThreads, sampleMillis / 4, sampleMillis,
+                            (threadIdx, iteration) -> {
+                                SplittableRandom random = randoms[threadIdx];
+                                if (random.nextDouble() > showProbability)
+                                    cube.rotate(random.nextInt(6), random.nextInt(size));
+                                else
+                                    cube.show();
+                            });
+                    System.out.printf("%12.0f", opsPerSec);
+                }
+                System.out.println();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package benchmark;
+
+import solution.LayerLockTable;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// Threads hammer the locks of neighbouring layers, thread i locking and unlocking layer i,
+// so there is no real contention and any slowdown comes from shared cache lines. We
+// compare separately allocated ReentrantLocks (as the reference cube used to keep) with
+// the flat LayerLockTable, both unpadded and padded.
+public class LayerLockBenchmark {
+    private static final int[] threadCounts = { 1, 32, 64 };
+
+    public static void main(String[] args) throws InterruptedException {
+        long sampleMillis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+
+        System.out.printf("%-12s%20s%20s%20s   (lock/unlock pairs/s)%n",
+                "threads", "ReentrantLock[]", "table, unpadded", "table, padded");
+        for (int numThreads: threadCounts) {
+            ReentrantLock[] reentrantLocks = new ReentrantLock[numThreads];
+            for (int layer = 0; layer < numThreads; ++layer) {
+                reentrantLocks[layer] = new ReentrantLock(true);
+            }
+            double reentrant = Throughput.measure(numThreads, sampleMillis / 4, sampleMillis,
+                    (threadIdx, iteration) -> {
+                        reentrantLocks[threadIdx].lock();
+                        reentrantLocks[threadIdx].unlock();
+                    });
+
+            LayerLockTable unpaddedTable = new LayerLockTable(numThreads, false);
+            double unpadded = Throughput.measure(numThreads, sampleMillis / 4, sampleMillis,
+                    (threadIdx, iteration) -> {
+                        unpaddedTable.lock(threadIdx);
+                        unpaddedTable.unlock(threadIdx);
+                    });
+
+            LayerLockTable paddedTable = new LayerLockTable(numThreads, true);
+            double padded = Throughput.measure(numThreads, sampleMillis / 4, sampleMillis,
+                    (threadIdx, iteration) -> {
+                        paddedTable.lock(threadIdx);
+                        paddedTable.unlock(threadIdx);
+                    });
+
+            System.out.printf("%-12d%20.0f%20.0f%20.0f%n", numThreads, reentrant, unpadded, padded);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package benchmark;
+
+import solution.Cube;
+import solution.CubeOptions;
+
+// Single-threaded outer-layer rotations of large cubes, each turning a whole face, with
+// the sequential path and with fork/join tasks in the common pool. Reported in moves per
+// second, i.e. the inverse of the latency of one move.
+public class ParallelRotationBenchmark {
+    private static final int[] sizes = { 256, 1024, 2048 };
+    private static final int[] thresholds = { 0, 4096, 65536 };
+
+    public static void main(String[] args) throws InterruptedException {
+        long sampleMillis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+
+        System.out.printf("%-12s", "size");
+        for (int threshold: thresholds) {
+            System.out.printf("%16s", "threshold " + threshold);
+        }
+        System.out.printf("   (moves/s, %d cores)%n", Runtime.getRuntime().availableProcessors());
+
+        for (int size: sizes) {
+            System.out.printf("%-12d", size);
+            for (int threshold: thresholds) {
+                CubeOptions options = new CubeOptions();
+                options.parallelThreshold = threshold;
+                Cube cube = new Cube(size, options, (x, y) -> {
+                }, (x, y) -> {
+                }, () -> {
+                }, () -> {
+                });
+
+                double moves = Throughput.measure(1, sampleMillis / 4, sampleMillis,
+                        (threadIdx, iteration) -> cube.rotate((int) (iteration % 6), 0));
+                System.out.printf("%16.0f", moves);
+            }
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package benchmark;
+
+import solution.Cube;
+import solution.CubeOptions;
+
+// Single-threaded rotations of inner layers, i.e. of rings alone, on the char backend,
+// moving the ring sticker by sticker or with block copies of the row segments. TOP and
+// BOTTOM rings consist of rows only and move as blocks; the other sides keep the
+// sticker loop either way. Reported in moves per second.
+public class RingCopyBenchmark {
+    private static final int[] sizes = { 16, 64, 256, 1024 };
+
+    public static void main(String[] args) throws InterruptedException {
+        long sampleMillis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+
+        System.out.printf("%-8s%-8s%16s%16s   (moves/s)%n", "size", "sides", "by sticker", "by block");
+        for (int size: sizes) {
+            for (int[] sides: new int[][] { { 0, 5 }, { 1, 2, 3, 4 } }) {
+                System.out.printf("%-8d%-8s", size, sides.length == 2 ? "T/B" : "others");
+                for (boolean blockCopy: new boolean[] { false, true }) {
+                    CubeOptions options = new CubeOptions();
+                    options.blockCopy = blockCopy;
+                    Cube cube = new Cube(size, options, (x, y) -> {
+                    }, (x, y) -> {
+                    }, () -> {
+                    }, () -> {
+                    });
+
+                    double moves = Throughput.measure(1, sampleMillis / 4, sampleMillis,
+                            (threadIdx, iteration) -> cube.rotate(sides[(int) (iteration % sides.length)],
+                                    1 + (int) (iteration % (size-2))));
+                    System.out.printf("%16.0f", moves);
+                }
+                System.out.println();
+            }
+        }
+    }
+}
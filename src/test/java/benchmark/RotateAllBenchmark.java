@@ -0,0 +1,58 @@
+package benchmark;
+
+import solution.AdmissionProtocol;
+import solution.Cube;
+import solution.CubeOptions;
+
+import java.util.Random;
+
+// A rotate-only loop in the style of CubeTest.rotateTestTemplate, replaying fixed random
+// move sequences either move by move or with rotateAll. Reported in moves per second.
+public class RotateAllBenchmark {
+    private static final int size = 3;
+    private static final int sequenceLength = 64;
+    private static final int numSequences = 256;
+    private static final int[] threadCounts = { 1, 4, 16 };
+
+    public static void main(String[] args) throws InterruptedException {
+        long sampleMillis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+
+        Random random = new Random(0);
+        int[][] sides = new int[numSequences][sequenceLength];
+        int[][] layers = new int[numSequences][sequenceLength];
+        for (int seqIdx = 0; seqIdx < numSequences; ++seqIdx) {
+            for (int move = 0; move < sequenceLength; ++move) {
+                sides[seqIdx][move] = random.nextInt(6);
+                layers[seqIdx][move] = random.nextInt(size);
+            }
+        }
+
+        System.out.printf("%-12s%-12s%16s%16s   (moves/s)%n", "protocol", "threads", "rotate", "rotateAll");
+        for (AdmissionProtocol protocol: AdmissionProtocol.values()) {
+            for (int numThreads: threadCounts) {
+                CubeOptions options = new CubeOptions();
+                options.admissionProtocol = protocol;
+                Cube cube = new Cube(size, options, (x, y) -> {
+                }, (x, y) -> {
+                }, () -> {
+                }, () -> {
+                });
+
+                double single = sequenceLength * Throughput.measure(numThreads, sampleMillis / 4, sampleMillis,
+                        (threadIdx, iteration) -> {
+                            int seqIdx = (int) ((threadIdx + iteration) % numSequences);
+                            for (int move = 0; move < sequenceLength; ++move) {
+                                cube.rotate(sides[seqIdx][move], layers[seqIdx][move]);
+                            }
+                        });
+                double batched = sequenceLength * Throughput.measure(numThreads, sampleMillis / 4, sampleMillis,
+                        (threadIdx, iteration) -> {
+                            int seqIdx = (int) ((threadIdx + iteration) % numSequences);
+                            cube.rotateAll(sides[seqIdx], layers[seqIdx]);
+                        });
+
+                System.out.printf("%-12s%-12d%16.0f%16.0f%n", protocol, numThreads, single, batched);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// A minimal throughput harness: a number of threads repeatedly run an operation for a
+// fixed time after a warmup, and we report the total number of operations per second.
+public class Throughput {
+    public interface Operation {
+        // Called in a loop; threadIdx tells the threads apart, iteration counts calls.
+        void run(int threadIdx, long iteration) throws Exception;
+    }
+
+    public static double measure(int numThreads, long warmupMillis, long sampleMillis, Operation operation)
+            throws InterruptedException {
+        AtomicBoolean stillRunning = new AtomicBoolean(true);
+        AtomicBoolean counting = new AtomicBoolean(false);
+        LongAdder numOps = new LongAdder();
+        CyclicBarrier allStarted = new CyclicBarrier(numThreads + 1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int threadIdx = 0; threadIdx < numThreads; ++threadIdx) {
+            int finalThreadIdx = threadIdx;
+            threads.add(new Thread(() -> {
+                try {
+                    allStarted.await();
+                    for (long iteration = 0; stillRunning.get(); ++iteration) {
+                        operation.run(finalThreadIdx, iteration);
+                        if (counting.get())
+                            numOps.increment();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+
+        for (Thread thread: threads) {
+            thread.start();
+        }
+        try {
+            allStarted.await();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        Thread.sleep(warmupMillis);
+        counting.set(true);
+        long start = System.nanoTime();
+        Thread.sleep(sampleMillis);
+        counting.set(false);
+        long elapsed = System.nanoTime() - start;
+
+        stillRunning.set(false);
+        for (Thread thread: threads) {
+            thread.join();
+        }
+
+        return numOps.sum() / (elapsed / 1e9);
+    }
+}
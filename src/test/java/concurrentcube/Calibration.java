@@ -0,0 +1,65 @@
+package concurrentcube;
+
+import java.util.Arrays;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+// The workload CubeTest times at suite start to scale its lags. It lives outside
+// CubeTest, because it runs during CubeTest's static initialization, and threads running
+// code of a class wait until that class is initialized.
+class Calibration {
+    private static final int numMoves = 20000;
+    private static final int numThreads = 20;
+    private static final int numRoundTrips = 200;
+
+    // The median time of three runs of the workload, after one to warm up, in ms.
+    static double timeWorkload() {
+        double[] millis = new double[3];
+        try {
+            runWorkload();
+            for (int run = 0; run < millis.length; ++run) {
+                long start = System.nanoTime();
+                runWorkload();
+                millis[run] = (System.nanoTime() - start) / 1e6;
+            }
+        } catch (InterruptedException | BrokenBarrierException e) {
+            throw new IllegalStateException("The calibration was interrupted", e);
+        }
+        Arrays.sort(millis);
+        return millis[1];
+    }
+
+    // A fixed amount of what the tests wait for: rotations of the reference cube, thread
+    // starts and joins, and barrier round-trips between two threads.
+    static void runWorkload() throws InterruptedException, BrokenBarrierException {
+        solution.Cube cube = new solution.Cube(3, (x, y) -> {
+        }, (x, y) -> {
+        }, () -> {
+        }, () -> {
+        });
+        for (int move = 0; move < numMoves; ++move) {
+            cube.rotate(move % 6, move % 3);
+        }
+
+        for (int threadIdx = 0; threadIdx < numThreads; ++threadIdx) {
+            Thread thread = new Thread(cube::show);
+            thread.start();
+            thread.join();
+        }
+
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        Thread partner = new Thread(() -> {
+            try {
+                for (int roundTrip = 0; roundTrip < numRoundTrips; ++roundTrip) {
+                    barrier.await();
+                }
+            } catch (InterruptedException | BrokenBarrierException ignored) {
+            }
+        });
+        partner.start();
+        for (int roundTrip = 0; roundTrip < numRoundTrips; ++roundTrip) {
+            barrier.await();
+        }
+        partner.join();
+    }
+}
@@ -0,0 +1,284 @@
+package concurrentcube;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Runs a few logical threads against a cube one step at a time. The threads stop at the
+// yield points (called from the cube's callbacks), and whenever all of them have settled
+// (stopped at a yield point, finished, or blocked inside the cube), the scheduler picks
+// one stopped thread to go on. The picks come from a seeded Random, or from a prefix given
+// by explore, which enumerates the schedules depth first.
+//
+// Stopping and finishing are exact: the threads report them through progress, which they
+// bump at every yield point. Blocking is read from Thread.getState() and the stack, and
+// a thread the cube has just woken still reads as waiting until it gets a CPU, so settle
+// only trusts a blocked thread once nothing has changed for settlePolls polls and
+// blockedSettleNanos. Nothing sleeps, so a schedule without blocking takes well under a
+// millisecond.
+class ControlledScheduler {
+    private static final int settlePolls = 64;
+    private static final long blockedSettleNanos = 1_000_000L;
+    private static final long settleTimeoutNanos = 5_000_000_000L;
+    // A thread just handed a lock may look blocked for a whole settle, when it does not
+    // get a CPU soon enough, so a deadlock is only declared after this long.
+    private static final long deadlockGraceNanos = 1_000_000_000L;
+
+    interface Task {
+        void run() throws InterruptedException;
+    }
+
+    class LogicalThread {
+        final String name;
+        final Thread thread;
+        // Set by the thread at a yield point, cleared by it once released.
+        volatile String stoppedAt = null;
+        // Set by the scheduler to let the thread go on, cleared by the thread as it stops.
+        volatile boolean released = true;
+        volatile boolean done = false;
+        volatile Throwable thrown = null;
+        // Bumped by the thread as it stops at a yield point, leaves it, and finishes.
+        volatile long progress = 0;
+
+        LogicalThread(String name, Task task) {
+            this.name = name;
+            this.thread = new Thread(() -> {
+                current.set(this);
+                try {
+                    yieldPoint("start");
+                    task.run();
+                } catch (Throwable e) {
+                    thrown = e;
+                } finally {
+                    done = true;
+                    ++progress;
+                }
+            }, name);
+            this.thread.setDaemon(true);
+        }
+
+        boolean stopped() {
+            return !done && stoppedAt != null && !released;
+        }
+
+        // Waiting in the cube itself rather than at a yield point (or before reaching the
+        // cube at all).
+        boolean blocked() {
+            if (done || stoppedAt != null || !released)
+                return false;
+            Thread.State state = thread.getState();
+            if (state != Thread.State.BLOCKED && state != Thread.State.WAITING
+                    && state != Thread.State.TIMED_WAITING)
+                return false;
+            for (StackTraceElement frame : thread.getStackTrace()) {
+                String className = frame.getClassName();
+                if (className.equals(cubeClass) || className.startsWith(cubeClass + "$"))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            String state = done ? "done" : stopped() ? "at " + stoppedAt : blocked() ? "blocked" : "running";
+            return name + " (" + state + ")";
+        }
+    }
+
+    ControlledScheduler(long seed) {
+        this(new Random(seed), Collections.emptyList());
+    }
+
+    private ControlledScheduler(Random random, List<int[]> prefix) {
+        this.random = random;
+        this.prefix = prefix;
+    }
+
+    // Runs schedule once per schedule of its threads, depth first over the picks, until all
+    // of them have been run or maxSchedules have. Returns the number of schedules run.
+    static int explore(int maxSchedules, Consumer<ControlledScheduler> schedule) {
+        List<int[]> prefix = Collections.emptyList();
+        int numSchedules = 0;
+        while (numSchedules < maxSchedules) {
+            ControlledScheduler scheduler = new ControlledScheduler(null, prefix);
+            schedule.accept(scheduler);
+            ++numSchedules;
+
+            // The next schedule differs in the last pick that still has untried options.
+            List<int[]> picks = new ArrayList<>(scheduler.picks);
+            while (!picks.isEmpty() && picks.get(picks.size() - 1)[0] + 1 >= picks.get(picks.size() - 1)[1])
+                picks.remove(picks.size() - 1);
+            if (picks.isEmpty())
+                break;
+            picks.get(picks.size() - 1)[0] += 1;
+            prefix = picks;
+        }
+        return numSchedules;
+    }
+
+    LogicalThread spawn(String name, Task task) {
+        LogicalThread logicalThread = new LogicalThread(name, task);
+        threads.add(logicalThread);
+        logicalThread.thread.start();
+        return logicalThread;
+    }
+
+    // Called by the cube's callbacks; threads not spawned by this scheduler pass through.
+    void yieldPoint(String label) {
+        LogicalThread self = current.get();
+        if (self == null)
+            return;
+
+        synchronized (trace) {
+            trace.add(self.name + ": " + label);
+        }
+
+        // An interrupt must not end the wait early, nor get lost for the cube.
+        boolean interrupted = Thread.interrupted();
+        self.released = false;
+        self.stoppedAt = label;
+        ++self.progress;
+        while (!self.released) {
+            LockSupport.park(this);
+            interrupted |= Thread.interrupted();
+        }
+        self.stoppedAt = null;
+        ++self.progress;
+        if (interrupted)
+            self.thread.interrupt();
+    }
+
+    // Waits until every thread has settled and stayed so, with the same progress and the
+    // same kind of settling, for settlePolls polls in a row (and blockedSettleNanos, if
+    // any thread is blocked).
+    void settle() {
+        long start = System.nanoTime(), deadline = start + settleTimeoutNanos;
+        long stableSince = start;
+        long[] lastSnapshot = null;
+        int stablePolls = 0;
+        while (true) {
+            long now = System.nanoTime();
+            long[] snapshot = new long[2 * threads.size()];
+            boolean allSettled = true, anyBlocked = false;
+            for (int idx = 0; idx < threads.size(); ++idx) {
+                LogicalThread logicalThread = threads.get(idx);
+                long progress = logicalThread.progress;
+                int kind = logicalThread.done ? 1 : logicalThread.stopped() ? 2 : logicalThread.blocked() ? 3 : 0;
+                allSettled &= kind != 0 && logicalThread.progress == progress;
+                anyBlocked |= kind == 3;
+                snapshot[2 * idx] = progress;
+                snapshot[2 * idx + 1] = kind;
+            }
+
+            if (allSettled && Arrays.equals(snapshot, lastSnapshot)) {
+                ++stablePolls;
+            } else {
+                stablePolls = 0;
+                stableSince = now;
+            }
+            lastSnapshot = snapshot;
+            if (stablePolls >= settlePolls && (!anyBlocked || now - stableSince >= blockedSettleNanos))
+                return;
+
+            if (now > deadline)
+                throw new AssertionError("Threads did not settle: " + threads);
+            Thread.yield();
+        }
+    }
+
+    void release(LogicalThread logicalThread) {
+        if (!logicalThread.stopped())
+            throw new IllegalStateException(logicalThread + " is not stopped at a yield point");
+        logicalThread.released = true;
+        LockSupport.unpark(logicalThread.thread);
+    }
+
+    void interrupt(LogicalThread logicalThread) {
+        logicalThread.thread.interrupt();
+    }
+
+    // Settles and picks stopped threads to go on until all are done. Fails if all the
+    // threads that are not done are blocked in the cube.
+    void runToCompletion() {
+        while (true) {
+            settle();
+            if (allDone())
+                return;
+
+            List<LogicalThread> stopped = stopped();
+            long deadline = System.nanoTime() + deadlockGraceNanos;
+            while (stopped.isEmpty() && !allDone()) {
+                if (System.nanoTime() > deadline) {
+                    abandon();
+                    throw new AssertionError("Deadlock: " + threads + " after " + trace());
+                }
+                Thread.yield();
+                settle();
+                stopped = stopped();
+            }
+            if (!stopped.isEmpty())
+                release(stopped.get(pick(stopped.size())));
+        }
+    }
+
+    private List<LogicalThread> stopped() {
+        List<LogicalThread> stopped = new ArrayList<>();
+        for (LogicalThread logicalThread : threads) {
+            if (logicalThread.stopped())
+                stopped.add(logicalThread);
+        }
+        return stopped;
+    }
+
+    private boolean allDone() {
+        for (LogicalThread logicalThread : threads) {
+            if (!logicalThread.done)
+                return false;
+        }
+        return true;
+    }
+
+    List<String> trace() {
+        synchronized (trace) {
+            return new ArrayList<>(trace);
+        }
+    }
+
+    private int pick(int numOptions) {
+        int choice;
+        if (picks.size() < prefix.size()) {
+            // The prefix comes from a run that had the same picks up to here, so it must
+            // have had the same options too.
+            int[] prefixPick = prefix.get(picks.size());
+            if (prefixPick[1] != numOptions)
+                throw new AssertionError("Schedule not reproducible: pick " + picks.size() + " had "
+                        + prefixPick[1] + " options, now " + numOptions + ", after " + trace());
+            choice = prefixPick[0];
+        }
+        else
+            choice = random != null ? random.nextInt(numOptions) : 0;
+        picks.add(new int[] { choice, numOptions });
+        return choice;
+    }
+
+    // Leaves deadlocked threads (daemons) with an interrupt, in case they can take it.
+    private void abandon() {
+        for (LogicalThread logicalThread : threads) {
+            if (!logicalThread.done)
+                logicalThread.thread.interrupt();
+        }
+    }
+
+    private static final String cubeClass = Cube.class.getName();
+
+    private final Random random;
+    private final List<int[]> prefix;
+    private final List<int[]> picks = new ArrayList<>();
+    private final List<LogicalThread> threads = new ArrayList<>();
+    private final List<String> trace = new ArrayList<>();
+    private final ThreadLocal<LogicalThread> current = new ThreadLocal<>();
+}
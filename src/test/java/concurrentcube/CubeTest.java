@@ -1,10 +1,18 @@
 package concurrentcube;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
@@ -12,14 +20,66 @@ import static org.junit.jupiter.api.Assertions.*;
 
 class CubeTest {
     private static final double showProbability = 0.2;
-    private static final long multiplier = 2;
-    private static final long taskEntryLag = 125 * multiplier;
-    private static final long taskExecTime = 250 * multiplier;
-    private static final long interruptLag = 125 * multiplier;
+    // The lags below scale with multiplier, which is calibrated at suite start: it is
+    // minMultiplier as long as the calibration workload takes at most
+    // referenceCalibrationMillis, and grows in proportion (continuously, so that nearby
+    // measurements give nearby lags) on slower or loaded machines. The reference is about
+    // twice what an unloaded grading machine measures, so the noise of such a machine
+    // never reaches it. Set -Dcubetest.multiplier to skip the calibration and use the
+    // given multiplier.
+    private static final String multiplierProperty = "cubetest.multiplier";
+    private static final double referenceCalibrationMillis = 100;
+    private static final double minMultiplier = 2;
+    private static final String multiplierOverride = System.getProperty(multiplierProperty);
+    private static final double calibrationMillis =
+            multiplierOverride == null ? Calibration.timeWorkload() : Double.NaN;
+    private static final double multiplier = multiplierOverride != null ? Double.parseDouble(multiplierOverride)
+            : Math.max(minMultiplier, minMultiplier * calibrationMillis / referenceCalibrationMillis);
+    private static final long taskEntryLag = Math.round(125 * multiplier);
+    private static final long taskExecTime = Math.round(250 * multiplier);
+    private static final long interruptLag = Math.round(125 * multiplier);
+    // How long a thread has to stay blocked before waitUntilBlocked believes it: a thread
+    // just handed a lock may still show as waiting for a moment.
+    private static final long blockedSettleMillis = 5;
     private static final long noTimeout = 9999999;
     private static final long sampleTime = 250;
     private static final int numRepeats = 8;
     private static final int maxThreads = 16;
+    // Set to a number of workers (e.g. -Dcubetest.virtualThreads=10000) to run the
+    // VirtualThreadTests, which need a JDK with virtual threads (21+).
+    private static final String virtualThreadsProperty = "cubetest.virtualThreads";
+
+    // Set to a directory (e.g. -Dcubetest.journalDir=build/journals) to have the rotate,
+    // show and interruption templates journal every rotation of the tested cube, in the
+    // order of its callbacks. A failed run keeps its journal, to be replayed with
+    // solution.JournalReplay; a passed one deletes it, as each takes the full capacity.
+    private static final String journalDirProperty = "cubetest.journalDir";
+    private static final int journalCapacity = 1 << 22;
+    // With -Dcubetest.fingerprints=true, the show and interruption templates compare
+    // states by their Zobrist fingerprints (see solution.Cube.fingerprint) instead of
+    // strings.
+    private static final boolean useFingerprints = Boolean.getBoolean("cubetest.fingerprints");
+
+    // The grader report picks this line up from the test output (see compose_report.py).
+    static {
+        String workload = multiplierOverride != null ? "skipped, set by " + multiplierProperty
+                : String.format(Locale.ROOT, "%.1f ms (reference %.1f ms)", calibrationMillis, referenceCalibrationMillis);
+        System.out.printf(Locale.ROOT, "cubetest calibration: multiplier %.2f, workload %s, taskEntryLag %d ms, "
+                + "taskExecTime %d ms, interruptLag %d ms%n", multiplier, workload, taskEntryLag, taskExecTime, interruptLag);
+    }
+
+    static final ThreadFactory platformThreads = Thread::new;
+
+    // Looked up reflectively, so that the suite still compiles and runs on older JDKs.
+    static ThreadFactory virtualThreads() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Object factory = Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+            return (ThreadFactory) factory;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
 
     static class RotateOp {
         public int side;
@@ -39,6 +99,101 @@ class CubeTest {
         }
     }
 
+    // What the oracle needs to know about a run, gathered at almost no cost to it: the
+    // callbacks only take a ticket and append it, with the operation, to a buffer of
+    // their own thread. The callbacks run inside the tested cube's critical sections, so
+    // of two conflicting operations the later one gets the later ticket, while operations
+    // the cube may run concurrently commute, so their order does not matter. After the
+    // run, replay applies the rotations to the reference cube in ticket order and checks
+    // every show against it.
+    static class OracleLog {
+        private static final int showMarker = 6;
+
+        // Ops are packed as ticket << 35 | side << 32 | layer, with showMarker for the side
+        // of a show, whose state is the next one in shows. A layer takes a whole int, so
+        // any cube size fits, and the ticket gets 28 bits.
+        private static final long maxTicket = (1L << 28) - 1;
+        private static class Buffer {
+            long[] ops = new long[1024];
+            int numOps = 0;
+            List<ShowOp> shows = new ArrayList<>();
+            int opCursor = 0;
+            int showCursor = 0;
+
+            void add(long op) {
+                if (numOps == ops.length)
+                    ops = Arrays.copyOf(ops, 2 * numOps);
+                ops[numOps++] = op;
+            }
+        }
+
+        private final AtomicLong nextTicket = new AtomicLong();
+        private final Queue<Buffer> buffers = new ConcurrentLinkedQueue<>();
+        private final ThreadLocal<Buffer> buffer = ThreadLocal.withInitial(() -> {
+            Buffer threadBuffer = new Buffer();
+            buffers.add(threadBuffer);
+            return threadBuffer;
+        });
+        private final ThreadLocal<ShowOp> showOpRef = new ThreadLocal<>();
+
+        // From beforeRotation.
+        void logRotation(int side, int layer) {
+            if (layer < 0)
+                throw new AssertionError("layer " + layer + " cannot be logged");
+            buffer.get().add(ticket() << 35 | (long) side << 32 | layer);
+        }
+
+        // From beforeShowing; the thread hands in the shown state with logShown once
+        // show returns.
+        void logShow() {
+            Buffer threadBuffer = buffer.get();
+            ShowOp showOp = new ShowOp(null);
+            threadBuffer.shows.add(showOp);
+            showOpRef.set(showOp);
+            threadBuffer.add(ticket() << 35 | (long) showMarker << 32);
+        }
+
+        private long ticket() {
+            long ticket = nextTicket.getAndIncrement();
+            if (ticket > maxTicket)
+                throw new AssertionError("more than " + maxTicket + " operations to log");
+            return ticket;
+        }
+
+        void logShown(String state) {
+            showOpRef.get().state = state;
+        }
+
+        // Merges the buffers, each already in ticket order, and replays them on ref.
+        // Returns whether every show matched ref; call it once the workers are done.
+        boolean replay(solution.Cube ref) {
+            PriorityQueue<Buffer> pending = new PriorityQueue<>(
+                    Comparator.comparingLong((Buffer threadBuffer) -> threadBuffer.ops[threadBuffer.opCursor]));
+            for (Buffer threadBuffer : buffers) {
+                if (threadBuffer.numOps > 0)
+                    pending.add(threadBuffer);
+            }
+
+            boolean statesEqual = true;
+            while (!pending.isEmpty()) {
+                Buffer threadBuffer = pending.poll();
+                long op = threadBuffer.ops[threadBuffer.opCursor++];
+                int side = (int) (op >>> 32) & 0x7, layer = (int) op;
+                if (side == showMarker) {
+                    String state = threadBuffer.shows.get(threadBuffer.showCursor++).state;
+                    if (state == null || !matchesRef(ref, state))
+                        statesEqual = false;
+                } else {
+                    ref.rotate(side, layer);
+                }
+
+                if (threadBuffer.opCursor < threadBuffer.numOps)
+                    pending.add(threadBuffer);
+            }
+            return statesEqual;
+        }
+    }
+
     static void waitForThreadJoin(Thread t, String message) throws InterruptedException {
         waitForThreadJoinEx(t, taskExecTime, message);
     }
@@ -56,6 +211,48 @@ class CubeTest {
         assertTrue(s.tryAcquire(time, TimeUnit.MILLISECONDS), message);
     }
 
+    // Added to the failure messages after waitUntilBlocked ran out of time.
+    static final String notSeenBlocked = " It was never seen blocked inside the cube.";
+
+    // Stands in for a sleep of timeoutMillis before checking on a thread that should get
+    // stuck in the cube: returns as soon as the thread has been blocked inside the cube
+    // for blockedSettleMillis, and otherwise once timeoutMillis pass. Returns whether it
+    // saw the thread blocked. A thread in a timed wait does not count, as it may go on by
+    // itself once the wait is over, so such a thread gets the whole timeoutMillis.
+    static boolean waitUntilBlocked(Thread t, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long settleNanos = TimeUnit.MILLISECONDS.toNanos(blockedSettleMillis);
+        long blockedSince = 0;
+        boolean blocked = false;
+        while (System.nanoTime() < deadline) {
+            if (isBlockedInCube(t)) {
+                if (!blocked)
+                    blockedSince = System.nanoTime();
+                else if (System.nanoTime() - blockedSince >= settleNanos)
+                    return true;
+                blocked = true;
+            } else {
+                blocked = false;
+            }
+            Thread.sleep(1);
+        }
+        return false;
+    }
+
+    // Parked (without a timeout) or waiting for a monitor with a frame of the tested cube
+    // on the stack, i.e. somewhere in its rotate or show (possibly in a callback).
+    static boolean isBlockedInCube(Thread t) {
+        Thread.State state = t.getState();
+        if (state != Thread.State.BLOCKED && state != Thread.State.WAITING)
+            return false;
+        for (StackTraceElement frame : t.getStackTrace()) {
+            String className = frame.getClassName();
+            if (className.equals(Cube.class.getName()) || className.startsWith(Cube.class.getName() + "$"))
+                return true;
+        }
+        return false;
+    }
+
     static void waitForThreadAtABarrier(CyclicBarrier barrier, long timeout) {
         try {
             barrier.await(timeout, TimeUnit.MILLISECONDS);
@@ -73,7 +270,105 @@ class CubeTest {
         }
     }
 
+    static solution.CubeOptions oracleOptions() {
+        solution.CubeOptions options = new solution.CubeOptions();
+        options.fingerprint = useFingerprints;
+        return options;
+    }
+
+    // The oracle's state at the last show of a thread.
+    static class RefState {
+        String show;
+        long fingerprint;
+        // Only with fingerprints: a copy of the state, made into a string only to report
+        // a mismatch.
+        final char[] chars;
+
+        RefState(int size) {
+            chars = useFingerprints ? new char[6 * size * size] : null;
+        }
+    }
+
+    // Called from beforeShowing, under the oracle's lock. With fingerprints, the oracle
+    // does not build a string at all, only copies its stickers, and the tested cube's
+    // string gets hashed outside the lock, in refStateMismatch.
+    static void recordRefState(solution.Cube ref, RefState refState) {
+        if (useFingerprints) {
+            refState.fingerprint = ref.fingerprint();
+            ref.showInto(refState.chars);
+        } else {
+            refState.show = ref.show();
+        }
+    }
+
+    // Null if state is the one recorded, else the difference. Different fingerprints mean
+    // different states for sure; equal ones mean equal states but for a 2^-64 chance of a
+    // collision.
+    static String refStateMismatch(String state, RefState refState) {
+        if (useFingerprints) {
+            if (solution.Cube.fingerprint(state) == refState.fingerprint)
+                return null;
+            return stateDiff(new String(refState.chars), state);
+        }
+        return refState.show.equals(state) ? null : stateDiff(refState.show, state);
+    }
+
+    static String stateDiff(String expected, String actual) {
+        int idx = 0;
+        while (idx < expected.length() && idx < actual.length() && expected.charAt(idx) == actual.charAt(idx))
+            ++idx;
+        return String.format(" A show returned %s where the reference had %s (first difference at %d).",
+                actual, expected, idx);
+    }
+
+    // For the final state, a matching fingerprint settles it, and the strings only get
+    // compared in full when it does not.
+    static boolean matchesRef(solution.Cube ref, String state) {
+        if (useFingerprints && solution.Cube.fingerprint(state) == ref.fingerprint())
+            return true;
+        return ref.show().equals(state);
+    }
+
+    static solution.RotationJournal openJournal(String template, int size) {
+        String journalDir = System.getProperty(journalDirProperty);
+        if (journalDir == null)
+            return null;
+
+        try {
+            Path dir = Files.createDirectories(Paths.get(journalDir));
+            Path file = dir.resolve(template + "-" + System.nanoTime() + ".journal");
+            return new solution.RotationJournal(file, size, journalCapacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void closeJournal(solution.RotationJournal journal) {
+        if (journal != null)
+            journal.close();
+    }
+
+    // Once the template has passed.
+    static void discardJournal(solution.RotationJournal journal) {
+        if (journal == null)
+            return;
+        try {
+            Files.deleteIfExists(journal.file());
+        } catch (IOException e) {
+            // Some systems do not delete a file that is still mapped.
+            journal.file().toFile().deleteOnExit();
+        }
+    }
+
+    static String journalNote(solution.RotationJournal journal) {
+        return journal != null ? " Rotations were journaled to " + journal.file() + "." : "";
+    }
+
     static void rotateTestTemplate(int numThreads) throws InterruptedException {
+        rotateTestTemplate(numThreads, platformThreads);
+    }
+
+    static void rotateTestTemplate(int numThreads, ThreadFactory threadFactory) throws InterruptedException {
         // We will simply launch a bunch of threads, let them do random rotates,
         // wait a while to accumulate them, and in the end validate the state.
         int size = 3;
@@ -83,18 +378,20 @@ class CubeTest {
         }, () -> {
         }, () -> {
         });
+        solution.RotationJournal journal = openJournal("rotate", size);
 
         // We use a flag here, so that in case we call cube methods after the experiment
         // (say, in the validate function above), we don't do anything.
         AtomicBoolean testMode = new AtomicBoolean(true);
 
+        // The rotations are replayed on ref after the run, in the order of their tickets.
+        OracleLog oracleLog = new OracleLog();
+
         BiConsumer<Integer, Integer> beforeRotation = (side, layer) -> {
             if (testMode.get()) {
-                // Synchronized is here, because (1) we use lists, (2) just in case memory
-                // consistency breaks down.
-                synchronized (ref) {
-                    ref.rotate(side, layer);
-                }
+                if (journal != null)
+                    journal.append(side, layer);
+                oracleLog.logRotation(side, layer);
             }
         };
         BiConsumer<Integer, Integer> afterRotation = (side, layer) -> {
@@ -135,7 +432,7 @@ class CubeTest {
 
         List<Thread> threadList = new ArrayList<>();
         for (int threadIdx = 0; threadIdx < numThreads; ++threadIdx) {
-            threadList.add(new Thread(workerFn));
+            threadList.add(threadFactory.newThread(workerFn));
         }
 
         for (Thread thread : threadList) {
@@ -150,9 +447,12 @@ class CubeTest {
         }
 
         testMode.set(false);
+        closeJournal(journal);
         assertFalse(hasThrown.get(),
                 "Methods returned InterruptedException spuriously.");
-        assertEquals(ref.show(), cube.show(), "The state doesn't match the reference implementation.");
+        oracleLog.replay(ref);
+        assertEquals(ref.show(), cube.show(), "The state doesn't match the reference implementation." + journalNote(journal));
+        discardJournal(journal);
     }
 
     @Nested
@@ -182,36 +482,38 @@ class CubeTest {
     }
 
     static void bothTestTemplate(int numThreads) throws InterruptedException {
+        bothTestTemplate(numThreads, platformThreads);
+    }
+
+    static void bothTestTemplate(int numThreads, ThreadFactory threadFactory) throws InterruptedException {
         // This is pretty much the same test, but now we also do show calls.
         int size = 3;
 
         // In order to validate the solution, we have the reference Cube implementation
-        // with which we duplicate the moves (in beforeRotation etc.)
-        solution.Cube ref = new solution.Cube(size, (x, y) -> {
+        // on which we replay the logged moves and shows after the run.
+        solution.Cube ref = new solution.Cube(size, oracleOptions(), (x, y) -> {
         }, (x, y) -> {
         }, () -> {
         }, () -> {
         });
-        ThreadLocal<String> refShow = new ThreadLocal<>();
-        AtomicBoolean statesEqual = new AtomicBoolean(true);
+        solution.RotationJournal journal = openJournal("both", size);
+        OracleLog oracleLog = new OracleLog();
 
         AtomicBoolean stillRunning = new AtomicBoolean(true);
         AtomicBoolean testMode = new AtomicBoolean(true);
 
         BiConsumer<Integer, Integer> beforeRotation = (side, layer) -> {
             if (testMode.get()) {
-                synchronized (ref) {
-                    ref.rotate(side, layer);
-                }
+                if (journal != null)
+                    journal.append(side, layer);
+                oracleLog.logRotation(side, layer);
             }
         };
         BiConsumer<Integer, Integer> afterRotation = (side, layer) -> {
         };
         Runnable beforeShowing = () -> {
             if (testMode.get()) {
-                synchronized (ref) {
-                    refShow.set(ref.show());
-                }
+                oracleLog.logShow();
             }
         };
         Runnable afterShowing = () -> {
@@ -237,9 +539,7 @@ class CubeTest {
                         int layer = random.nextInt(size);
                         cube.rotate(side, layer);
                     } else {
-                        String state = cube.show();
-                        if (!refShow.get().equals(state))
-                            statesEqual.set(false);
+                        oracleLog.logShown(cube.show());
                     }
                 }
 
@@ -251,7 +551,7 @@ class CubeTest {
 
         List<Thread> threadList = new ArrayList<>();
         for (int threadIdx = 0; threadIdx < numThreads; ++threadIdx) {
-            threadList.add(new Thread(workerFn));
+            threadList.add(threadFactory.newThread(workerFn));
         }
 
         for (Thread thread : threadList) {
@@ -267,10 +567,13 @@ class CubeTest {
         }
 
         testMode.set(false);
+        closeJournal(journal);
         assertFalse(hasThrown.get(),
                 "Methods returned InterruptedException spuriously.");
-        assertTrue(statesEqual.get() && ref.show().equals(cube.show()),
-                "The state doesn't match the reference implementation.");
+        boolean statesEqual = oracleLog.replay(ref);
+        assertTrue(statesEqual && matchesRef(ref, cube.show()),
+                "The state doesn't match the reference implementation." + journalNote(journal));
+        discardJournal(journal);
     }
 
     @Nested
@@ -353,122 +656,170 @@ class CubeTest {
             waitForThreadAtABarrier(firstThreadEnter, taskEntryLag);
 
             thr2.start();
-            Thread.sleep(taskEntryLag);
+            boolean blocked2 = waitUntilBlocked(thr2, taskEntryLag);
             assertTrue(thr2.isAlive(), "Thread #2 has for some reason finished execution??");
             thr2.interrupt();
             assertDoesNotThrow(() -> {
                 interruptBarrier.await(interruptLag, TimeUnit.MILLISECONDS);
-            }, "Thread #2 should have left the waiting.");
+            }, "Thread #2 should have left the waiting." + (blocked2 ? "" : notSeenBlocked));
 
             thr3.start();
-            Thread.sleep(taskEntryLag);
+            boolean blocked3 = waitUntilBlocked(thr3, taskEntryLag);
             assertTrue(thr3.isAlive(), "Thread #3 has for some reason finished execution??");
             thr3.interrupt();
             assertDoesNotThrow(() -> {
                 interruptBarrier.await(interruptLag, TimeUnit.MILLISECONDS);
-            }, "Thread #3 should have left the waiting.");
+            }, "Thread #3 should have left the waiting." + (blocked3 ? "" : notSeenBlocked));
 
             waitForThreadAtABarrier(firstThreadExit, taskEntryLag);
             waitForThreadJoin(thr1, "Somehow thread #1 hasn't finished");
         }
     }
 
-    @Nested
-    @DisplayName("Tests for the full correctness of the operations in the presence of interruptions.")
-    class InterruptionCorrectnessFull {
-        @RepeatedTest(numRepeats)
-        @DisplayName("Simply testing integrity of the cube state.")
-        void fullInterruptTest() throws InterruptedException {
-            // The scenario here is fairly simple: we do stuff as in the previous test, but
-            // the main thread will continuously interrupt a random thread for some time.
-            // The interrupted threads will continue working looping so that we interrupt
-            // enough of them.
-            int size = 3;
+    static void interruptTestTemplate(int numThreads, ThreadFactory threadFactory) throws InterruptedException {
+        // The scenario here is fairly simple: we do stuff as in the previous test, but
+        // the main thread will continuously interrupt a random thread for some time.
+        // The interrupted threads will continue working looping so that we interrupt
+        // enough of them.
+        int size = 3;
 
-            solution.Cube ref = new solution.Cube(size, (x, y) -> {
-            }, (x, y) -> {
-            }, () -> {
-            }, () -> {
-            });
-            ThreadLocal<String> refShow = new ThreadLocal<>();
-            AtomicBoolean statesEqual = new AtomicBoolean(true);
+        solution.Cube ref = new solution.Cube(size, oracleOptions(), (x, y) -> {
+        }, (x, y) -> {
+        }, () -> {
+        }, () -> {
+        });
+        solution.RotationJournal journal = openJournal("interrupt", size);
+        ThreadLocal<RefState> refStates = ThreadLocal.withInitial(() -> new RefState(size));
+        AtomicReference<String> firstMismatch = new AtomicReference<>();
 
-            AtomicBoolean stillRunning = new AtomicBoolean(true);
-            AtomicBoolean testMode = new AtomicBoolean(true);
+        AtomicBoolean stillRunning = new AtomicBoolean(true);
+        AtomicBoolean testMode = new AtomicBoolean(true);
 
-            BiConsumer<Integer, Integer> beforeRotation = (side, layer) -> {
-                if (testMode.get()) {
-                    ref.rotate(side, layer);
-                }
-            };
-            BiConsumer<Integer, Integer> afterRotation = (side, layer) -> {
-            };
-            Runnable beforeShowing = () -> {
-                if (testMode.get()) {
-                    refShow.set(ref.show());
-                }
-            };
-            Runnable afterShowing = () -> {
-            };
+        BiConsumer<Integer, Integer> beforeRotation = (side, layer) -> {
+            if (testMode.get()) {
+                if (journal != null)
+                    journal.append(side, layer);
+                ref.rotate(side, layer);
+            }
+        };
+        BiConsumer<Integer, Integer> afterRotation = (side, layer) -> {
+        };
+        Runnable beforeShowing = () -> {
+            if (testMode.get()) {
+                recordRefState(ref, refStates.get());
+            }
+        };
+        Runnable afterShowing = () -> {
+        };
 
-            Cube cube = new Cube(size,
-                    beforeRotation, afterRotation,
-                    beforeShowing, afterShowing);
+        Cube cube = new Cube(size,
+                beforeRotation, afterRotation,
+                beforeShowing, afterShowing);
 
-            Semaphore workerSem = new Semaphore(maxThreads);
-            CyclicBarrier allEntered = new CyclicBarrier(maxThreads+1);
+        Semaphore workerSem = new Semaphore(numThreads);
+        CyclicBarrier allEntered = new CyclicBarrier(numThreads+1);
 
-            Runnable workerFn = () -> {
-                try { workerSem.acquire(); allEntered.await(); }
-                catch (InterruptedException | BrokenBarrierException ignored) {}
+        // A virtual thread only gives up its carrier when it blocks, and nothing here
+        // blocks unless the cube does; with few carriers a single worker could then keep
+        // the others (and the ones the main thread waits for) off the CPU for good.
+        boolean yieldEachOp = threadFactory != platformThreads;
 
-                long threadId = Thread.currentThread().getId();
-                Random random = new Random(threadId);
+        Runnable workerFn = () -> {
+            try { workerSem.acquire(); allEntered.await(); }
+            catch (InterruptedException | BrokenBarrierException ignored) {}
 
-                while (stillRunning.get()) {
-                    try {
-                        if (random.nextDouble() > showProbability) {
-                            int side = random.nextInt(6);
-                            int layer = random.nextInt(size);
-                            cube.rotate(side, layer);
-                        } else {
-                            String state = cube.show();
-                            if (!refShow.get().equals(state))
-                                statesEqual.set(false);
-                        }
-                    } catch (InterruptedException ignored) {
+            long threadId = Thread.currentThread().getId();
+            Random random = new Random(threadId);
+
+            while (stillRunning.get()) {
+                if (yieldEachOp)
+                    Thread.yield();
+                try {
+                    if (random.nextDouble() > showProbability) {
+                        int side = random.nextInt(6);
+                        int layer = random.nextInt(size);
+                        cube.rotate(side, layer);
+                    } else {
+                        String state = cube.show();
+                        String mismatch = refStateMismatch(state, refStates.get());
+                        if (mismatch != null)
+                            firstMismatch.compareAndSet(null, mismatch);
                     }
+                } catch (InterruptedException ignored) {
                 }
+            }
 
-                workerSem.release();
-            };
+            workerSem.release();
+        };
 
-            List<Thread> threadList = new ArrayList<>();
-            for (int threadIdx = 0; threadIdx < maxThreads; ++threadIdx) {
-                threadList.add(new Thread(workerFn));
-            }
+        List<Thread> threadList = new ArrayList<>();
+        for (int threadIdx = 0; threadIdx < numThreads; ++threadIdx) {
+            threadList.add(threadFactory.newThread(workerFn));
+        }
 
-            for (Thread thread : threadList) {
-                thread.start();
-            }
-            stallOnABarrier(allEntered);
+        for (Thread thread : threadList) {
+            thread.start();
+        }
+        stallOnABarrier(allEntered);
+
+        long testDurationNs = (long) (sampleTime * 1e6);
+        Random random = new Random();
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < testDurationNs) {
+            int threadIndex = random.nextInt(numThreads);
+            threadList.get(threadIndex).interrupt();
+        }
 
-            long testDurationNs = (long) (sampleTime * 1e6);
-            Random random = new Random();
-            long start = System.nanoTime();
-            while (System.nanoTime() - start < testDurationNs) {
-                int threadIndex = random.nextInt(maxThreads);
-                threadList.get(threadIndex).interrupt();
-            }
+        stillRunning.set(false);
+        for (int threadIdx = 0; threadIdx < numThreads; ++threadIdx) {
+            waitForAnyThreadExit(workerSem, "Worker thread got stuck");
+        }
 
-            stillRunning.set(false);
-            for (int threadIdx = 0; threadIdx < maxThreads; ++threadIdx) {
-                waitForAnyThreadExit(workerSem, "Worker thread got stuck");
-            }
+        testMode.set(false);
+        closeJournal(journal);
+        String mismatch = firstMismatch.get();
+        assertTrue(mismatch == null && matchesRef(ref, cube.show()),
+                "The state doesn't match the reference implementation." + (mismatch != null ? mismatch : "")
+                        + journalNote(journal));
+        discardJournal(journal);
+    }
 
-            testMode.set(false);
-            assertTrue(statesEqual.get() && ref.show().equals(cube.show()),
-                    "The state doesn't match the reference implementation.");
+    @Nested
+    @DisplayName("Tests for the full correctness of the operations in the presence of interruptions.")
+    class InterruptionCorrectnessFull {
+        @RepeatedTest(numRepeats)
+        @DisplayName("Simply testing integrity of the cube state.")
+        void fullInterruptTest() throws InterruptedException {
+            interruptTestTemplate(maxThreads, platformThreads);
+        }
+    }
+
+    @Nested
+    @DisplayName("Tests of the templates above with thousands of virtual threads.")
+    @EnabledIfSystemProperty(named = virtualThreadsProperty, matches = "[0-9]+")
+    class VirtualThreadTests {
+        int numWorkers() {
+            ThreadFactory factory = virtualThreads();
+            Assumptions.assumeTrue(factory != null, "This JDK has no virtual threads.");
+            return Integer.parseInt(System.getProperty(virtualThreadsProperty));
+        }
+
+        @Test
+        @DisplayName("Testing rotate correctness with virtual threads.")
+        void testRotate() throws InterruptedException {
+            rotateTestTemplate(numWorkers(), virtualThreads());
+        }
+
+        @Test
+        @DisplayName("Testing rotate and show correctness with virtual threads.")
+        void testBothOps() throws InterruptedException {
+            bothTestTemplate(numWorkers(), virtualThreads());
+        }
+
+        @Test
+        @DisplayName("Testing correctness under interruptions with virtual threads.")
+        void testInterruptions() throws InterruptedException {
+            interruptTestTemplate(numWorkers(), virtualThreads());
         }
     }
 
@@ -625,8 +976,8 @@ class CubeTest {
         // ("active" and "waiting"), starting the active one and ensuring that it has
         // reached the beforeX callback,
         // and then starting the waiting one and ensuring that it has *not* reached the
-        // afterX callback (by waiting
-        // at a barrier for 100ms).
+        // beforeX callback (by waiting until it blocks, at most taskEntryLag, and then
+        // checking that it is not at the barrier in the callback).
 
         solution.Cube ref = new solution.Cube(3, (x, y) -> {
         }, (x, y) -> {
@@ -717,9 +1068,11 @@ class CubeTest {
         waitForThreadAtABarrier(activeThreadPreExit, taskExecTime + taskEntryLag);
 
         thread2.start();
+        boolean blocked = waitUntilBlocked(thread2, taskEntryLag);
         assertThrows(TimeoutException.class, () -> {
-            waitingThreadEntry.await(taskEntryLag, TimeUnit.MILLISECONDS);
-        }, "The second thread has reached the callback, and so the execution was non-exclusive.");
+            waitingThreadEntry.await(0, TimeUnit.MILLISECONDS);
+        }, "The second thread has reached the callback, and so the execution was non-exclusive."
+                + (blocked ? "" : notSeenBlocked));
 
         waitForThreadAtABarrier(activeThreadExit, taskEntryLag);
         waitForThreadAtABarrier(waitingThreadEntry, taskEntryLag);
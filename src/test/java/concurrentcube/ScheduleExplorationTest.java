@@ -0,0 +1,211 @@
+package concurrentcube;
+
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The ordering checks of CubeTest (SeqExec, ParallelExec, InterruptionTestsLite) under a
+// ControlledScheduler instead of sleeps and barrier timeouts: every schedule of the
+// threads, or a seeded random sample of them, runs in microseconds and the same seed
+// always picks the same schedule.
+class ScheduleExplorationTest {
+    private static final int size = 3;
+    private static final int maxSchedules = 500;
+    private static final int numRandomSchedules = 200;
+    // Base seed of the random schedules, e.g. -Dcubetest.scheduleSeed=42 to rerun a failure.
+    private static final long scheduleSeed = Long.getLong("cubetest.scheduleSeed", 2021);
+
+    // A cube whose callbacks are the yield points of the scheduler and which tracks the
+    // operations in progress.
+    static class Run {
+        final ControlledScheduler scheduler;
+        final Cube cube;
+        // The operations between their before- and after-callbacks.
+        final List<int[]> inside = new ArrayList<>();
+        // The operation of the calling thread, for leave; callbacks run on it.
+        private final ThreadLocal<int[]> ops = new ThreadLocal<>();
+        final AtomicBoolean conflicted = new AtomicBoolean(false);
+        int maxInside = 0;
+
+        Run(ControlledScheduler scheduler) {
+            this.scheduler = scheduler;
+            this.cube = new Cube(size,
+                    (side, layer) -> {
+                        enter(new int[] { side, layer });
+                        scheduler.yieldPoint("beforeRotation " + side + " " + layer);
+                    },
+                    (side, layer) -> {
+                        scheduler.yieldPoint("afterRotation " + side + " " + layer);
+                        leave();
+                    },
+                    () -> {
+                        enter(null);
+                        scheduler.yieldPoint("beforeShowing");
+                    },
+                    () -> {
+                        scheduler.yieldPoint("afterShowing");
+                        leave();
+                    });
+        }
+
+        ControlledScheduler.LogicalThread spawn(String name, int[] op) {
+            return scheduler.spawn(name, () -> {
+                if (op != null)
+                    cube.rotate(op[0], op[1]);
+                else
+                    cube.show();
+            });
+        }
+
+        private synchronized void enter(int[] op) {
+            for (int[] other : inside) {
+                if (conflict(op, other))
+                    conflicted.set(true);
+            }
+            inside.add(op);
+            ops.set(op);
+            maxInside = Math.max(maxInside, inside.size());
+        }
+
+        private synchronized void leave() {
+            inside.remove(ops.get());
+        }
+    }
+
+    static int axis(int side) {
+        return side == 0 || side == 5 ? 0 : side == 1 || side == 3 ? 1 : 2;
+    }
+
+    // Layers counted from the first side of the axis (0, 1 or 2).
+    static int axisLayer(int side, int layer) {
+        return side < 3 ? layer : size - 1 - layer;
+    }
+
+    static boolean conflict(int[] op1, int[] op2) {
+        if (op1 == null || op2 == null)
+            return op1 != op2;
+        return axis(op1[0]) != axis(op2[0])
+                || axisLayer(op1[0], op1[1]) == axisLayer(op2[0], op2[1]);
+    }
+
+    static void assertNoFailures(ControlledScheduler.LogicalThread... threads) {
+        for (ControlledScheduler.LogicalThread thread : threads) {
+            assertNull(thread.thrown, thread.name + " threw " + thread.thrown);
+        }
+    }
+
+    // An operation of a logical thread: {side, layer} of a rotation, or null for a show.
+    static final int[] show = null;
+
+    static int[] rotation(int side, int layer) {
+        return new int[] { side, layer };
+    }
+
+    void assertExcluded(int[] op1, int[] op2) {
+        int numSchedules = ControlledScheduler.explore(maxSchedules, scheduler -> {
+            Run run = new Run(scheduler);
+            ControlledScheduler.LogicalThread thread1 = run.spawn("T1", op1);
+            ControlledScheduler.LogicalThread thread2 = run.spawn("T2", op2);
+            scheduler.runToCompletion();
+            assertNoFailures(thread1, thread2);
+            assertFalse(run.conflicted.get(), "Conflicting operations overlapped: " + scheduler.trace());
+        });
+        assertTrue(numSchedules > 1);
+    }
+
+    void assertParallel(int[] op1, int[] op2) {
+        AtomicBoolean overlapped = new AtomicBoolean(false);
+        ControlledScheduler.explore(maxSchedules, scheduler -> {
+            Run run = new Run(scheduler);
+            ControlledScheduler.LogicalThread thread1 = run.spawn("T1", op1);
+            ControlledScheduler.LogicalThread thread2 = run.spawn("T2", op2);
+            scheduler.runToCompletion();
+            assertNoFailures(thread1, thread2);
+            if (run.maxInside == 2)
+                overlapped.set(true);
+        });
+        assertTrue(overlapped.get(), "No schedule ran the operations in parallel");
+    }
+
+    @Test
+    @DisplayName("Conflicting operations never overlap, in any schedule")
+    void testExclusions() {
+        assertExcluded(show, rotation(0, 0));
+        assertExcluded(rotation(0, 0), rotation(1, 1));
+        assertExcluded(rotation(0, 0), rotation(2, 1));
+        for (int side = 0; side < 6; ++side) {
+            assertExcluded(rotation(side, 0), rotation(side, 0));
+        }
+        assertExcluded(rotation(0, 0), rotation(5, 2));
+        assertExcluded(rotation(1, 0), rotation(3, 2));
+        assertExcluded(rotation(2, 0), rotation(4, 2));
+    }
+
+    @Test
+    @DisplayName("Compatible operations overlap in some schedule")
+    void testParallelism() {
+        assertParallel(show, show);
+        assertParallel(rotation(0, 0), rotation(0, 1));
+        assertParallel(rotation(0, 0), rotation(5, 0));
+        assertParallel(rotation(1, 0), rotation(3, 0));
+        assertParallel(rotation(2, 0), rotation(4, 0));
+    }
+
+    @Test
+    @DisplayName("Random schedules of a rotate/show mix respect the exclusions")
+    void testRandomSchedules() {
+        for (int scheduleIdx = 0; scheduleIdx < numRandomSchedules; ++scheduleIdx) {
+            long seed = scheduleSeed + scheduleIdx;
+            Random random = new Random(seed);
+            ControlledScheduler scheduler = new ControlledScheduler(seed);
+            Run run = new Run(scheduler);
+
+            List<ControlledScheduler.LogicalThread> threads = new ArrayList<>();
+            for (int threadIdx = 0; threadIdx < 3; ++threadIdx) {
+                int[] op = random.nextDouble() < 0.2 ? show : rotation(random.nextInt(6), random.nextInt(size));
+                threads.add(run.spawn("T" + threadIdx, op));
+            }
+            scheduler.runToCompletion();
+
+            assertNoFailures(threads.toArray(new ControlledScheduler.LogicalThread[0]));
+            assertFalse(run.conflicted.get(),
+                    "Conflicting operations overlapped with seed " + seed + ": " + scheduler.trace());
+        }
+    }
+
+    @Test
+    @DisplayName("Threads waiting for a conflicting operation can be interrupted")
+    void testInterruption() {
+        ControlledScheduler scheduler = new ControlledScheduler(scheduleSeed);
+        Run run = new Run(scheduler);
+
+        // T1 enters rotate(0, 0) and stays at beforeRotation.
+        ControlledScheduler.LogicalThread holder = run.spawn("T1", rotation(0, 0));
+        scheduler.settle();
+        scheduler.release(holder);
+        scheduler.settle();
+        assertEquals("beforeRotation 0 0", holder.stoppedAt);
+
+        for (int[] op : new int[][] { rotation(0, 0), show }) {
+            ControlledScheduler.LogicalThread waiter = run.spawn("T2", op);
+            scheduler.settle();
+            scheduler.release(waiter);
+            scheduler.settle();
+            assertTrue(waiter.blocked(), "The thread was not blocked: " + waiter);
+
+            scheduler.interrupt(waiter);
+            scheduler.settle();
+            assertTrue(waiter.done, "The thread did not stop when interrupted: " + waiter);
+            assertTrue(waiter.thrown instanceof InterruptedException,
+                    "The thread did not throw InterruptedException: " + waiter.thrown);
+        }
+
+        scheduler.runToCompletion();
+        assertNoFailures(holder);
+    }
+}
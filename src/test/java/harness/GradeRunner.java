@@ -0,0 +1,200 @@
+package harness;
+
+import org.junit.platform.launcher.Launcher;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.reporting.legacy.xml.LegacyXmlReportGeneratingListener;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+import static org.junit.platform.launcher.EngineFilter.includeEngines;
+import static org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder.request;
+
+// Runs the graded classes of concurrentcube.CubeTest one after another and leaves, for
+// each, what one `./gradlew :test --tests` run per class used to leave for grade-all.sh:
+// <out>/<name>/xml/TEST-concurrentcube.CubeTest$<name>.xml, the out and err of the class,
+// and an empty <out>/<name>/timeout if it did not finish in time.
+//
+// The classes run in a worker JVM, started by this one, which only supervises. A class
+// that times out is abandoned (its threads get an interrupt), but its threads, or those
+// any class leaves running, would steal the CPU from the timing of the next classes. So
+// the worker then stops, and the rest of the classes go to a fresh worker, which
+// calibrates anew. The worker lists the classes it starts in <out>/.started.
+//   usage: GradeRunner <out> [timeoutSeconds] [class...]
+public class GradeRunner {
+    static final List<String> gradedClasses = Arrays.asList(
+            "RotateTestsLite", "RotateTestsFull", "BothOpsTestsLite", "BothOpsTestsFull",
+            "InterruptionTestsLite", "InterruptionCorrectnessFull", "ParallelExec1", "ParallelExec2", "ParallelExec3",
+            "SeqExec1", "SeqExec2", "SeqExec3", "SeqExec4", "LivelinessTests");
+    static final String testClass = "concurrentcube.CubeTest";
+    static final long defaultTimeoutSeconds = 240;
+    // How long the threads a class started get to end once it has finished.
+    static final long leftoverGraceMillis = 2000;
+    // Set on the worker JVMs.
+    static final String workerProperty = "harness.worker";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: GradeRunner <out> [timeoutSeconds] [class...]");
+            System.exit(2);
+        }
+        Path outDir = Paths.get(args[0]);
+        long timeoutSeconds = args.length > 1 ? Long.parseLong(args[1]) : defaultTimeoutSeconds;
+        List<String> classes = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : gradedClasses;
+
+        Files.createDirectories(outDir);
+        if (Boolean.getBoolean(workerProperty))
+            work(outDir, timeoutSeconds, classes);
+        else
+            supervise(outDir, timeoutSeconds, classes);
+    }
+
+    static void supervise(Path outDir, long timeoutSeconds, List<String> classes) throws IOException, InterruptedException {
+        Path started = outDir.resolve(".started");
+        Files.deleteIfExists(started);
+        Files.deleteIfExists(outDir.resolve("calibration"));
+
+        int numStarted = 0;
+        while (numStarted < classes.size()) {
+            startWorker(outDir, timeoutSeconds, classes.subList(numStarted, classes.size())).waitFor();
+            int numStartedNow = Files.exists(started) ? Files.readAllLines(started).size() : 0;
+            if (numStartedNow == numStarted) {
+                System.err.println("The worker did not start " + classes.get(numStarted));
+                System.exit(1);
+            }
+            numStarted = numStartedNow;
+        }
+    }
+
+    // A JVM with the options of this one, running the given classes.
+    static Process startWorker(Path outDir, long timeoutSeconds, List<String> classes) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-D" + workerProperty + "=true");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(GradeRunner.class.getName());
+        command.add(outDir.toString());
+        command.add(Long.toString(timeoutSeconds));
+        command.addAll(classes);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    static void work(Path outDir, long timeoutSeconds, List<String> classes) throws IOException, InterruptedException {
+        PrintStream stdout = System.out, stderr = System.err;
+
+        // CubeTest calibrates its lags once per JVM, in its static initializer, so its
+        // calibration line goes to a file of its own rather than to the first class, one
+        // line per worker.
+        try (PrintStream calibrationOut = new PrintStream(
+                new FileOutputStream(outDir.resolve("calibration").toFile(), true), true)) {
+            System.setOut(calibrationOut);
+            System.setErr(calibrationOut);
+            Class.forName(testClass, true, GradeRunner.class.getClassLoader());
+        } catch (Throwable e) {
+            stderr.println("Could not initialize " + testClass + ": " + e);
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+
+        try (PrintStream startedOut = new PrintStream(
+                new FileOutputStream(outDir.resolve(".started").toFile(), true), true)) {
+            for (int idx = 0; idx < classes.size(); ++idx) {
+                String name = classes.get(idx);
+                startedOut.println(name);
+                Set<Thread> threadsBefore = new HashSet<>(Thread.getAllStackTraces().keySet());
+                long start = System.nanoTime();
+                boolean finished = runClass(outDir.resolve(name), name, timeoutSeconds);
+                System.setOut(stdout);
+                System.setErr(stderr);
+                stdout.printf("%-28s %s in %.1f s%n", name, finished ? "finished" : "TIMED OUT",
+                        (System.nanoTime() - start) / 1e9);
+
+                if (idx + 1 == classes.size())
+                    break;
+                List<Thread> leftovers = finished ? leftoverThreads(threadsBefore) : null;
+                if (!finished || !leftovers.isEmpty()) {
+                    stdout.printf("%s left %s running; the rest go to a fresh JVM%n", name,
+                            finished ? leftovers.size() + " thread(s)" : "its threads");
+                    break;
+                }
+            }
+        }
+
+        // Abandoned classes may have left non-daemon threads of their own behind.
+        System.exit(0);
+    }
+
+    // The threads started since threadsBefore that are still alive after leftoverGraceMillis.
+    static List<Thread> leftoverThreads(Set<Thread> threadsBefore) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leftoverGraceMillis);
+        List<Thread> leftovers = new ArrayList<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (threadsBefore.contains(thread) || thread == Thread.currentThread())
+                continue;
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis > 0)
+                thread.join(remainingMillis);
+            if (thread.isAlive())
+                leftovers.add(thread);
+        }
+        return leftovers;
+    }
+
+    // Returns whether the class finished within the timeout.
+    static boolean runClass(Path classDir, String name, long timeoutSeconds) throws IOException, InterruptedException {
+        Path xmlDir = classDir.resolve("xml");
+        Files.createDirectories(xmlDir);
+        PrintStream out = new PrintStream(new FileOutputStream(classDir.resolve("out").toFile()), true);
+        PrintStream err = new PrintStream(new FileOutputStream(classDir.resolve("err").toFile()), true);
+        System.setOut(out);
+        System.setErr(err);
+
+        String className = testClass + "$" + name;
+        LauncherDiscoveryRequest request = request()
+                .selectors(selectClass(className))
+                .filters(includeEngines("junit-jupiter"))
+                .build();
+        Launcher launcher = LauncherFactory.create();
+        LegacyXmlReportGeneratingListener xmlListener =
+                new LegacyXmlReportGeneratingListener(xmlDir, new PrintWriter(err, true));
+
+        Thread runner = new Thread(() -> launcher.execute(request, xmlListener), "grade-" + name);
+        runner.setDaemon(true);
+        runner.start();
+        runner.join(TimeUnit.SECONDS.toMillis(timeoutSeconds));
+
+        boolean finished = !runner.isAlive();
+        if (finished) {
+            // The listener names the report after the engine; compose_report.py expects
+            // the name Gradle gives it.
+            Path report = xmlDir.resolve("TEST-junit-jupiter.xml");
+            if (Files.exists(report))
+                Files.move(report, xmlDir.resolve("TEST-" + className + ".xml"), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            runner.interrupt();
+            Files.deleteIfExists(xmlDir.resolve("TEST-junit-jupiter.xml"));
+            Files.write(classDir.resolve("timeout"), new byte[0]);
+        }
+        out.close();
+        err.close();
+        return finished;
+    }
+}
@@ -0,0 +1,14 @@
+package solution;
+
+// How admission trades throughput for fairness, i.e. when a newcomer compatible with the
+// operations in progress may join them while a conflicting operation is waiting.
+public enum AdmissionPolicy {
+    // Never: newcomers queue up behind every waiter, as with fair locks.
+    FIFO,
+    // Always, so a group which is never empty starves all the others.
+    UNFAIR,
+    // Only for a while: once a waiter has queued up, the active group admits at most
+    // CubeOptions.bypassAdmissions newcomers within CubeOptions.bypassMicros, and then
+    // drains. Needs the GROUP_LOCK protocol.
+    BOUNDED_BYPASS
+}
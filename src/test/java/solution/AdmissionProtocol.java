@@ -0,0 +1,9 @@
+package solution;
+
+public enum AdmissionProtocol {
+    // A global fair acquisition lock, under which an operation takes the lock of its own
+    // group and drains the locks of the conflicting ones.
+    LOCKS,
+    // A single GroupLock shared by the three axes and show.
+    GROUP_LOCK
+}
@@ -0,0 +1,44 @@
+package solution;
+
+public class CharState implements State {
+    public CharState(int length) {
+        this.stickers = new char[length];
+    }
+
+    @Override
+    public int length() {
+        return stickers.length;
+    }
+
+    @Override
+    public char get(int index) {
+        return stickers[index];
+    }
+
+    @Override
+    public void set(int index, char color) {
+        stickers[index] = color;
+    }
+
+    @Override
+    public void getChars(int begin, int end, char[] dst, int dstBegin) {
+        System.arraycopy(stickers, begin, dst, dstBegin, end - begin);
+    }
+
+    @Override
+    public void setChars(int begin, int end, char[] src, int srcBegin) {
+        System.arraycopy(src, srcBegin, stickers, begin, end - begin);
+    }
+
+    @Override
+    public void copy(int begin, int end, int dstBegin) {
+        System.arraycopy(stickers, begin, stickers, dstBegin, end - begin);
+    }
+
+    @Override
+    public String asString() {
+        return new String(stickers);
+    }
+
+    private final char[] stickers;
+}
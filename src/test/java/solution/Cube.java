@@ -1,13 +1,14 @@
 package solution;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiConsumer;
-import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 public class Cube {
     public Cube(int size,
@@ -15,200 +16,705 @@ public class Cube {
                 BiConsumer<Integer, Integer> afterRotation,
                 Runnable beforeShowing,
                 Runnable afterShowing) {
+        this(size, new CubeOptions(), beforeRotation, afterRotation, beforeShowing, afterShowing);
+    }
+
+    public Cube(int size,
+                CubeOptions options,
+                BiConsumer<Integer, Integer> beforeRotation,
+                BiConsumer<Integer, Integer> afterRotation,
+                Runnable beforeShowing,
+                Runnable afterShowing) {
         this.size = size;
         this.indexer = new Indexer(size);
 
-        StringBuilder stateBuilder = new StringBuilder();
+        state = options.stateBackend.create(indexer.dataLength);
+        showMode = options.showMode;
+        version = showMode == ShowMode.OPTIMISTIC ? new StateVersion() : null;
+        if (options.showCache && options.stateBackend == StateBackend.PACKED)
+            throw new IllegalArgumentException("the show cache does not go with the packed backend");
+        snapshot = options.showCache ? new ShowSnapshot(size, state) : null;
+        fingerprint = options.fingerprint ? new AtomicLong(Zobrist.of(Permutation.initialState(size))) : null;
+
+        if (options.journal != null && options.journal.size() != size)
+            throw new IllegalArgumentException("journal of a cube of size " + options.journal.size());
+        journal = options.journal;
+        metrics = options.metrics;
+
+        // Rings whose four segments are rows of their faces, all running the same way
+        // (those of TOP and BOTTOM, in our layout), which can be moved as blocks. Only the
+        // char backend has blocks to copy.
+        blockRings = new boolean[6];
+        if (options.blockCopy && options.stateBackend == StateBackend.CHARS) {
+            for (Side side: Side.values()) {
+                int stride = indexer.ringStride(side, 0);
+                boolean blocks = stride == 1 || stride == -1;
+                for (int rotatedIdx = 1; rotatedIdx < 4; ++rotatedIdx) {
+                    blocks &= indexer.ringStride(side, rotatedIdx) == stride;
+                }
+                blockRings[side.ordinal()] = blocks;
+            }
+        }
+        ringScratch = ThreadLocal.withInitial(() -> new char[size]);
+
+        parallelThreshold = options.parallelThreshold;
+        pool = parallelThreshold <= 0 ? null : options.pool != null ? options.pool : ForkJoinPool.commonPool();
+        faceViews = new FaceView[6];
+        for (Side side: Side.values()) {
+            faceViews[side.ordinal()] = new FaceView(state, side.ordinal()*size*size, size*size);
+        }
         for (Side side: Side.values()) {
             char sideChar = (char)('0' + side.ordinal());
-            stateBuilder.append(Character.toString(sideChar).repeat(size*size));
+            for (int idx = side.ordinal()*size*size; idx < (side.ordinal()+1)*size*size; ++idx) {
+                state.set(idx, sideChar);
+            }
         }
 
-        state = stateBuilder.toString().toCharArray();
-
         this.beforeRotation = beforeRotation;
         this.afterRotation = afterRotation;
         this.beforeShowing = beforeShowing;
         this.afterShowing = afterShowing;
 
-        acquisitionLock = new ReentrantLock(true);
-        showLock = new ReentrantReadWriteLock(true);
+        // The locks are either all fair or all not; only the group lock can bound a bypass.
+        if (options.admissionPolicy == AdmissionPolicy.BOUNDED_BYPASS
+                && options.admissionProtocol != AdmissionProtocol.GROUP_LOCK)
+            throw new IllegalArgumentException("bounded bypass needs the GROUP_LOCK protocol");
+        boolean fair = options.admissionPolicy == AdmissionPolicy.FIFO;
+
+        groupLock = options.admissionProtocol == AdmissionProtocol.GROUP_LOCK
+                ? new GroupLock(options.admissionPolicy, options.bypassAdmissions, options.bypassMicros)
+                : null;
+        acquisitionLock = new ReentrantLock(fair);
+        showLock = new ReentrantReadWriteLock(fair);
+
+        // Locks are looked up by index on every rotation, hence plain arrays indexed by the
+        // axis ordinal, and one flat table for the layers of all axes.
+        Axis[] axes = Axis.values();
+        axisLocks = new ReentrantReadWriteLock[axes.length];
+        for (Axis axis: axes) {
+            axisLocks[axis.ordinal()] = new ReentrantReadWriteLock(fair);
+        }
+
+        layerSlotsPerAxis = options.layerLockStripes > 0 ? Math.min(size, options.layerLockStripes) : size;
+        layerLocks = new LayerLockTable(axes.length * layerSlotsPerAxis, true);
 
-        axisLocks = new HashMap<>();
-        layerLocks = new HashMap<>();
-        for (Axis axis: Axis.values()) {
-            axisLocks.put(axis, new ReentrantReadWriteLock(true));
+        // The lock sets used by rotate and show are fixed, so we gather them once here
+        // instead of building lists on every call.
+        allAxesWriteLocks = new ReentrantReadWriteLock.WriteLock[axes.length];
+        otherAxesWriteLocks = new ReentrantReadWriteLock.WriteLock[axes.length][axes.length-1];
+        for (Axis axis: axes) {
+            allAxesWriteLocks[axis.ordinal()] = axisLocks[axis.ordinal()].writeLock();
 
-            List<ReentrantLock> axisLayerLocks = new ArrayList<>();
-            for (int layer = 0; layer < size; ++layer) {
-                axisLayerLocks.add(new ReentrantLock(true));
+            int otherIdx = 0;
+            for (Axis otherAxis: axes) {
+                if (!otherAxis.equals(axis))
+                    otherAxesWriteLocks[axis.ordinal()][otherIdx++] = axisLocks[otherAxis.ordinal()].writeLock();
             }
-            layerLocks.put(axis, axisLayerLocks);
         }
     }
 
     public void rotate(int sideIndex, int layer) {
-        Side side = Side.values()[sideIndex];
+        rotate(sideIndex, layer, 1);
+    }
+
+    // Same as quarterTurns (1, 2 or 3) calls of rotate(sideIndex, layer) in a row, with
+    // nothing in between, but admitted once and moving each sticker once. The callbacks
+    // still fire once per quarter turn: all the before-callbacks first, then all the
+    // after-callbacks.
+    public void rotate(int sideIndex, int layer, int quarterTurns) {
+        if (quarterTurns < 1 || quarterTurns > 3)
+            throw new IllegalArgumentException("quarterTurns must be 1, 2 or 3, got " + quarterTurns);
 
+        Side side = Side.of(sideIndex);
         Axis sideAxis = side.axis();
-        List<Axis> otherAxes = new ArrayList<>();
-        for (Axis axis: Axis.values()) {
-            if (!axis.equals(sideAxis))
-                otherAxes.add(axis);
+        int layerSlot = layerSlot(side, layer);
+
+        long requested = clock();
+        admitRotation(sideAxis, layerSlot);
+        long admitted = clock();
+        long callbackNanos, released;
+        try {
+            callbackNanos = performRotation(side, layer, quarterTurns);
         }
+        finally {
+            released = clock();
+            leaveRotation(sideAxis, layerSlot);
+        }
+        if (metrics != null)
+            metrics.record(sideAxis.ordinal(), admitted - requested, released - admitted, callbackNanos);
+    }
 
-        ReentrantReadWriteLock.ReadLock sideAxisLock = axisLocks.get(sideAxis).readLock();
-        boolean sideAxisLockHeld = false;
+    // Applies the moves (sides[i], layers[i]) in order. Each maximal run of consecutive
+    // moves around one axis is admitted once; the moves of a run still lock their layers
+    // and fire their callbacks one by one, so other rotations of that axis may interleave
+    // with the run, but never in the middle of a move.
+    public void rotateAll(int[] sides, int[] layers) {
+        if (sides.length != layers.length)
+            throw new IllegalArgumentException("sides and layers differ in length");
+
+        int runStart = 0;
+        while (runStart < sides.length) {
+            Axis runAxis = Side.of(sides[runStart]).axis();
+            int runEnd = runStart + 1;
+            while (runEnd < sides.length && Side.of(sides[runEnd]).axis() == runAxis)
+                ++runEnd;
+
+            long requested = clock();
+            admitRotation(runAxis, noLayerSlot);
+            long admitted = clock();
+            long callbackNanos = 0, released;
+            try {
+                for (int moveIdx = runStart; moveIdx < runEnd; ++moveIdx) {
+                    Side side = Side.of(sides[moveIdx]);
+                    int layerSlot = layerSlot(side, layers[moveIdx]);
+                    layerLocks.lock(layerSlot);
+                    try {
+                        callbackNanos += performRotation(side, layers[moveIdx], 1);
+                    }
+                    finally {
+                        layerLocks.unlock(layerSlot);
+                    }
+                }
+            }
+            finally {
+                released = clock();
+                leaveRotation(runAxis, noLayerSlot);
+            }
+            if (metrics != null)
+                metrics.record(runAxis.ordinal(), admitted - requested, released - admitted, callbackNanos);
 
-        List<ReentrantReadWriteLock.WriteLock> otherAxesLocks = new ArrayList<>();
-        for (Axis otherAxis: otherAxes) {
-            otherAxesLocks.add(axisLocks.get(otherAxis).writeLock());
+            runStart = runEnd;
         }
+    }
+
+    // Slot of the layer lock in layerLocks; with striping, distant layers may share a slot.
+    private int layerSlot(Side side, int layer) {
+        if (layer < 0 || layer >= size)
+            throw new IndexOutOfBoundsException("layer " + layer + " of a cube of size " + size);
 
         int lockLayer = layer;
         if (side.parity() < 0) {
             lockLayer = (size - 1) - lockLayer;
         }
-        ReentrantLock layerLock = layerLocks.get(side.axis()).get(lockLayer);
+        return side.axis().ordinal() * layerSlotsPerAxis + lockLayer % layerSlotsPerAxis;
+    }
 
-        ReentrantReadWriteLock.WriteLock showWriteLock = showLock.writeLock();
+    // Takes the admission for a rotation around sideAxis and, unless it is noLayerSlot,
+    // the layer lock.
+    private void admitRotation(Axis sideAxis, int layerSlot) {
+        if (groupLock != null) {
+            groupLock.acquire(sideAxis.ordinal());
+            if (layerSlot != noLayerSlot)
+                layerLocks.lock(layerSlot);
+            return;
+        }
 
+        acquisitionLock.lock();
         try {
-            acquisitionLock.lock();
-
-            sideAxisLock.lock();
-            sideAxisLockHeld = true;
+            axisLocks[sideAxis.ordinal()].readLock().lock();
+            if (layerSlot != noLayerSlot)
+                layerLocks.lock(layerSlot);
 
-            layerLock.lock();
-
-            for (ReentrantReadWriteLock.WriteLock otherAxisLock: otherAxesLocks) {
+            for (ReentrantReadWriteLock.WriteLock otherAxisLock: otherAxesWriteLocks[sideAxis.ordinal()]) {
                 otherAxisLock.lock();
                 otherAxisLock.unlock();
             }
 
+            ReentrantReadWriteLock.WriteLock showWriteLock = showLock.writeLock();
             showWriteLock.lock();
             showWriteLock.unlock();
-
+        }
+        finally {
             acquisitionLock.unlock();
+        }
+    }
+
+    private void leaveRotation(Axis sideAxis, int layerSlot) {
+        if (layerSlot != noLayerSlot)
+            layerLocks.unlock(layerSlot);
 
+        if (groupLock != null)
+            groupLock.release(sideAxis.ordinal());
+        else
+            axisLocks[sideAxis.ordinal()].readLock().unlock();
+    }
+
+    // Runs an admitted move of quarterTurns quarter turns, with the layer lock already held.
+    // Returns the time spent in the callbacks, if metrics are on.
+    private long performRotation(Side side, int layer, int quarterTurns) {
+        int sideIndex = side.ordinal();
+        long beforeStart = clock();
+        for (int turn = 0; turn < quarterTurns; ++turn) {
+            if (journal != null)
+                journal.append(sideIndex, layer);
             beforeRotation.accept(sideIndex, layer);
+        }
+        long callbackNanos = clock() - beforeStart;
 
-            Side[] rotatedSides = side.rotatedSides();
-            synchronized (state) {
-                for (int offset = 0; offset < size; ++offset) {
-                    Character[] savedChars = new Character[rotatedSides.length];
-                    int[] indices = new int[rotatedSides.length];
+        // No lock around the data itself: the layer lock makes this thread the only
+        // one touching these stickers, and the admission locks order us with every
+        // conflicting operation, which also publishes our writes to later shows.
+        if (version != null)
+            version.beginWrite();
+        try {
+            if (snapshot != null)
+                snapshot.markDirty(touchedFaces(side, layer));
+            long keysBefore = fingerprint != null ? touchedKeys(side, layer) : 0;
 
-                    for (int rotatedIdx = 0; rotatedIdx < rotatedSides.length; ++rotatedIdx) {
-                        indices[rotatedIdx] = indexer.index(side, rotatedSides[rotatedIdx], layer, offset);
-                        savedChars[rotatedIdx] = state[indices[rotatedIdx]];
-                    }
+            rotateRing(side, layer, quarterTurns);
 
-                    for (int rotatedIdx = 0; rotatedIdx < rotatedSides.length; ++rotatedIdx) {
-                        state[indices[(rotatedIdx+1)%rotatedSides.length]] = savedChars[rotatedIdx];
-                    }
-                }
+            if (layer == 0) {
+                rotateFace(sideIndex, quarterTurns);
+            }
+            if (layer == size-1) {
+                // Seen from the opposite face, the layer turns the other way round, i.e.
+                // by 4-quarterTurns clockwise quarter turns, which we do in one pass too.
+                rotateFace(side.opposite().ordinal(), 4 - quarterTurns);
+            }
 
-                if (layer == 0 || layer == size-1) {
-                    Consumer<Integer> rotateSide = (rotatedSide) -> {
-                        char[] saved = Arrays.copyOfRange(state, rotatedSide*size*size, (rotatedSide+1)*size*size);
-                        for (int x = 0; x < size; ++x) {
-                            for (int y = 0; y < size; ++y) {
-                                int u = y, v = size-1-x;
-                                state[rotatedSide*size*size+u*size+v] = saved[x*size+y];
-                            }
-                        }
-                    };
-
-                    if (layer == 0) {
-                        rotateSide.accept(sideIndex);
-                    }
-                    else {
-                        for (int idx = 0; idx < 3; ++idx) {
-                            rotateSide.accept(side.opposite().ordinal());
-                        }
-                    }
-                }
+            if (fingerprint != null) {
+                long keysChange = keysBefore ^ touchedKeys(side, layer);
+                fingerprint.accumulateAndGet(keysChange, (keys, change) -> keys ^ change);
             }
+        }
+        finally {
+            if (version != null)
+                version.endWrite();
+        }
 
+        long afterStart = clock();
+        for (int turn = 0; turn < quarterTurns; ++turn) {
             afterRotation.accept(sideIndex, layer);
         }
-        finally {
-            if (showWriteLock.isHeldByCurrentThread())
-                showWriteLock.unlock();
+        return callbackNanos + (clock() - afterStart);
+    }
+
+    // The time for metrics, or 0 without them, to keep System.nanoTime off the fast path.
+    private long clock() {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+
+    private int touchedFaces(Side side, int layer) {
+        int faces = 0;
+        for (Side rotatedSide: side.rotatedSides()) {
+            faces |= ShowSnapshot.faceBit(rotatedSide);
+        }
+        if (layer == 0)
+            faces |= ShowSnapshot.faceBit(side);
+        if (layer == size-1)
+            faces |= ShowSnapshot.faceBit(side.opposite());
+        return faces;
+    }
+
+    // XOR of the Zobrist keys of the stickers a rotation moves. Taking it before and after
+    // the move gives the change of the fingerprint, however the move was carried out.
+    private long touchedKeys(Side side, int layer) {
+        long keys = 0;
+        for (int rotatedIdx = 0; rotatedIdx < 4; ++rotatedIdx) {
+            int base = indexer.ringBase(side, layer, rotatedIdx), stride = indexer.ringStride(side, rotatedIdx);
+            for (int offset = 0; offset < size; ++offset) {
+                int idx = base + offset*stride;
+                keys ^= Zobrist.key(idx, state.get(idx));
+            }
+        }
 
-            for (ReentrantReadWriteLock.WriteLock otherAxisLock: otherAxesLocks) {
-                if (otherAxisLock.isHeldByCurrentThread())
-                    otherAxisLock.unlock();
+        int faceLength = size*size;
+        if (layer == 0) {
+            for (int idx = side.ordinal()*faceLength; idx < (side.ordinal()+1)*faceLength; ++idx) {
+                keys ^= Zobrist.key(idx, state.get(idx));
             }
+        }
+        if (layer == size-1) {
+            int opposite = side.opposite().ordinal();
+            for (int idx = opposite*faceLength; idx < (opposite+1)*faceLength; ++idx) {
+                keys ^= Zobrist.key(idx, state.get(idx));
+            }
+        }
+        return keys;
+    }
+
+    private void rotateRing(Side side, int layer, int quarterTurns) {
+        if (parallelThreshold > 0 && size > parallelThreshold)
+            pool.invoke(new RingTask(side, layer, quarterTurns, 0, size));
+        else
+            rotateRing(side, layer, quarterTurns, 0, size);
+    }
 
-            if (layerLock.isHeldByCurrentThread())
-                layerLock.unlock();
+    // Turns the face clockwise by quarterTurns quarter turns.
+    private void rotateFace(int face, int quarterTurns) {
+        int rowCycles = (size+1)/2;
+        if (parallelThreshold > 0 && (long) (size/2) * rowCycles > parallelThreshold)
+            pool.invoke(new FaceTask(face, quarterTurns, 0, size/2));
+        else
+            rotateFace(face, quarterTurns, 0, size/2);
+    }
 
-            if (sideAxisLockHeld)
-                sideAxisLock.unlock();
+    // The part of the ring at offsets fromOffset..toOffset-1.
+    private void rotateRing(Side side, int layer, int quarterTurns, int fromOffset, int toOffset) {
+        int base0 = indexer.ringBase(side, layer, 0), stride0 = indexer.ringStride(side, 0);
+        int base1 = indexer.ringBase(side, layer, 1), stride1 = indexer.ringStride(side, 1);
+        int base2 = indexer.ringBase(side, layer, 2), stride2 = indexer.ringStride(side, 2);
+        int base3 = indexer.ringBase(side, layer, 3), stride3 = indexer.ringStride(side, 3);
+
+        if (blockRings[side.ordinal()]) {
+            rotateRingByBlocks(base0 + fromOffset*stride0, base1 + fromOffset*stride1,
+                    base2 + fromOffset*stride2, base3 + fromOffset*stride3, stride0,
+                    toOffset - fromOffset, quarterTurns);
+            return;
+        }
 
-            if (acquisitionLock.isHeldByCurrentThread())
-                acquisitionLock.unlock();
+        // A quarter turn moves the sticker on the i-th rotated side onto the (i+1)-th one.
+        for (int offset = fromOffset; offset < toOffset; ++offset) {
+            cycle(base0 + offset*stride0, base1 + offset*stride1,
+                    base2 + offset*stride2, base3 + offset*stride3, quarterTurns);
         }
     }
 
-    public String show() {
-        List<ReentrantReadWriteLock.WriteLock> allAxesLocks = new ArrayList<>();
-        for (Axis axis: Axis.values()) {
-            allAxesLocks.add(axisLocks.get(axis).writeLock());
+    // The same cycles for a ring made of four rows running the same way, which are
+    // contiguous in the state: each segment moves as one block copy, with the one it
+    // would overwrite set aside in a scratch buffer first. Offsets grow with the index
+    // when stride is 1 and shrink when it is -1, so each block starts at its lowest index.
+    private void rotateRingByBlocks(int base0, int base1, int base2, int base3, int stride,
+                                    int length, int quarterTurns) {
+        int start0 = stride > 0 ? base0 : base0 - (length-1);
+        int start1 = stride > 0 ? base1 : base1 - (length-1);
+        int start2 = stride > 0 ? base2 : base2 - (length-1);
+        int start3 = stride > 0 ? base3 : base3 - (length-1);
+
+        char[] scratch = ringScratch.get();
+        switch (quarterTurns) {
+            case 1:
+                state.getChars(start3, start3 + length, scratch, 0);
+                state.copy(start2, start2 + length, start3);
+                state.copy(start1, start1 + length, start2);
+                state.copy(start0, start0 + length, start1);
+                state.setChars(start0, start0 + length, scratch, 0);
+                break;
+            case 2:
+                state.getChars(start0, start0 + length, scratch, 0);
+                state.copy(start2, start2 + length, start0);
+                state.setChars(start2, start2 + length, scratch, 0);
+                state.getChars(start1, start1 + length, scratch, 0);
+                state.copy(start3, start3 + length, start1);
+                state.setChars(start3, start3 + length, scratch, 0);
+                break;
+            case 3:
+                state.getChars(start0, start0 + length, scratch, 0);
+                state.copy(start1, start1 + length, start0);
+                state.copy(start2, start2 + length, start1);
+                state.copy(start3, start3 + length, start2);
+                state.setChars(start3, start3 + length, scratch, 0);
+                break;
+        }
+    }
+
+    // The 4-cycles of the face starting in rows fromX..toX-1.
+    private void rotateFace(int face, int quarterTurns, int fromX, int toX) {
+        // A clockwise quarter turn sends (x, y) to (y, size-1-x), so the face splits into
+        // 4-cycles, each of which has exactly one element in the upper-left quadrant.
+        int faceBase = face*size*size;
+        for (int x = fromX; x < toX; ++x) {
+            for (int y = 0; y < (size+1)/2; ++y) {
+                int idx0 = faceBase + x*size + y;
+                int idx1 = faceBase + y*size + (size-1-x);
+                int idx2 = faceBase + (size-1-x)*size + (size-1-y);
+                int idx3 = faceBase + (size-1-y)*size + x;
+                cycle(idx0, idx1, idx2, idx3, quarterTurns);
+            }
+        }
+    }
+
+    // The cycles of a ring or a face are disjoint, so the tasks below split them into
+    // ranges and move those independently; invoke returning is what publishes their
+    // writes to the rotating thread.
+    private class RingTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        RingTask(Side side, int layer, int quarterTurns, int fromOffset, int toOffset) {
+            this.side = side;
+            this.layer = layer;
+            this.quarterTurns = quarterTurns;
+            this.fromOffset = fromOffset;
+            this.toOffset = toOffset;
+        }
+
+        @Override
+        protected void compute() {
+            if (toOffset - fromOffset <= parallelThreshold) {
+                rotateRing(side, layer, quarterTurns, fromOffset, toOffset);
+                return;
+            }
+            int midOffset = (fromOffset + toOffset) >>> 1;
+            invokeAll(new RingTask(side, layer, quarterTurns, fromOffset, midOffset),
+                    new RingTask(side, layer, quarterTurns, midOffset, toOffset));
         }
 
-        ReentrantReadWriteLock.ReadLock showReadLock = showLock.readLock();
-        boolean showReadLockHeld = false;
+        private final Side side;
+        private final int layer, quarterTurns, fromOffset, toOffset;
+    }
+
+    private class FaceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        FaceTask(int face, int quarterTurns, int fromX, int toX) {
+            this.face = face;
+            this.quarterTurns = quarterTurns;
+            this.fromX = fromX;
+            this.toX = toX;
+        }
+
+        @Override
+        protected void compute() {
+            if (toX - fromX <= 1 || (long) (toX - fromX) * ((size+1)/2) <= parallelThreshold) {
+                rotateFace(face, quarterTurns, fromX, toX);
+                return;
+            }
+            int midX = (fromX + toX) >>> 1;
+            invokeAll(new FaceTask(face, quarterTurns, fromX, midX), new FaceTask(face, quarterTurns, midX, toX));
+        }
+
+        private final int face, quarterTurns, fromX, toX;
+    }
+
+    // Moves the sticker at idx0 onto idx1, idx1 onto idx2, idx2 onto idx3 and idx3 onto
+    // idx0, quarterTurns times over, touching each sticker once.
+    private void cycle(int idx0, int idx1, int idx2, int idx3, int quarterTurns) {
+        char saved;
+        switch (quarterTurns) {
+            case 1:
+                saved = state.get(idx3);
+                state.set(idx3, state.get(idx2));
+                state.set(idx2, state.get(idx1));
+                state.set(idx1, state.get(idx0));
+                state.set(idx0, saved);
+                break;
+            case 2:
+                saved = state.get(idx0);
+                state.set(idx0, state.get(idx2));
+                state.set(idx2, saved);
+                saved = state.get(idx1);
+                state.set(idx1, state.get(idx3));
+                state.set(idx3, saved);
+                break;
+            case 3:
+                saved = state.get(idx0);
+                state.set(idx0, state.get(idx1));
+                state.set(idx1, state.get(idx2));
+                state.set(idx2, state.get(idx3));
+                state.set(idx3, saved);
+                break;
+        }
+    }
+
+    public String show() {
+        if (showMode == ShowMode.OPTIMISTIC)
+            return showOptimistic();
 
         String stateStr;
+        long requested = clock();
+        admitShow();
+        long admitted = clock();
+        long callbackNanos, released;
         try {
-            acquisitionLock.lock();
+            beforeShowing.run();
+            long beforeEnd = clock();
+            stateStr = snapshot != null ? snapshot.take() : state.asString();
+            long afterStart = clock();
+            afterShowing.run();
+            callbackNanos = (beforeEnd - admitted) + (clock() - afterStart);
+        }
+        finally {
+            released = clock();
+            leaveShow();
+        }
+        if (metrics != null)
+            metrics.record(CubeMetrics.SHOWS, admitted - requested, released - admitted, callbackNanos);
 
-            showReadLock.lock();
-            showReadLockHeld = true;
+        return stateStr;
+    }
 
-            for (ReentrantReadWriteLock.WriteLock axisLock: allAxesLocks) {
-                axisLock.lock();
-                axisLock.unlock();
-            }
+    // The Zobrist fingerprint of the current state, equal to fingerprint(show()). It is
+    // admitted like a show, but it is not one, so the show callbacks do not fire.
+    public long fingerprint() {
+        admitShow();
+        try {
+            return fingerprint != null ? fingerprint.get() : Zobrist.of(state.asString());
+        }
+        finally {
+            leaveShow();
+        }
+    }
 
-            acquisitionLock.unlock();
+    public static long fingerprint(String shownState) {
+        return Zobrist.of(shownState);
+    }
+
+    // Like show, but copies the state into dst[0..6*size*size) instead of a new string.
+    public void showInto(char[] dst) {
+        if (dst.length < state.length())
+            throw new IllegalArgumentException("buffer of " + dst.length + " chars for " + state.length() + " stickers");
+        showInto(dst, 0);
+    }
 
+    // Like show, but puts the state at the position of dst and advances it.
+    public void showInto(CharBuffer dst) {
+        int length = state.length();
+        if (dst.remaining() < length)
+            throw new BufferOverflowException();
+
+        if (dst.hasArray()) {
+            showInto(dst.array(), dst.arrayOffset() + dst.position());
+            dst.position(dst.position() + length);
+        }
+        else {
+            // A direct buffer has no array to copy into, so it is filled face by face.
+            showFaces((face, sideIndex) -> {
+                for (int idx = 0; idx < face.length(); ++idx) {
+                    dst.put(face.charAt(idx));
+                }
+            });
+        }
+    }
+
+    // Passes each face, in side order, to consumer together with its side index, as a
+    // view of the state rather than a copy. The views are only valid during the call:
+    // the consumer runs between beforeShowing and afterShowing with rotations kept out,
+    // in both show modes.
+    public void showFaces(ObjIntConsumer<CharSequence> consumer) {
+        admitShow();
+        try {
             beforeShowing.run();
-            synchronized (state) {
-                stateStr = new String(state);
+            for (int sideIndex = 0; sideIndex < faceViews.length; ++sideIndex) {
+                consumer.accept(faceViews[sideIndex], sideIndex);
             }
             afterShowing.run();
+        }
+        finally {
+            leaveShow();
+        }
+    }
+
+    private void showInto(char[] dst, int dstBegin) {
+        if (showMode == ShowMode.OPTIMISTIC) {
+            showIntoOptimistic(dst, dstBegin);
+            return;
+        }
+
+        admitShow();
+        try {
+            beforeShowing.run();
+            state.getChars(0, state.length(), dst, dstBegin);
+            afterShowing.run();
+        }
+        finally {
+            leaveShow();
+        }
+    }
+
+    private void admitShow() {
+        if (groupLock != null) {
+            groupLock.acquire(GroupLock.SHOW_GROUP);
+            return;
+        }
+
+        acquisitionLock.lock();
+        try {
+            showLock.readLock().lock();
 
-            return stateStr;
+            for (ReentrantReadWriteLock.WriteLock axisLock: allAxesWriteLocks) {
+                axisLock.lock();
+                axisLock.unlock();
+            }
         }
         finally {
-            for (ReentrantReadWriteLock.WriteLock axisLock: allAxesLocks) {
-                if (axisLock.isHeldByCurrentThread())
-                    axisLock.unlock();
+            acquisitionLock.unlock();
+        }
+    }
+
+    private void leaveShow() {
+        if (groupLock != null)
+            groupLock.release(GroupLock.SHOW_GROUP);
+        else
+            showLock.readLock().unlock();
+    }
+
+    // Without admission, the wait recorded in metrics is 0 and the hold is the whole show.
+    private String showOptimistic() {
+        long start = clock();
+        beforeShowing.run();
+        long beforeEnd = clock();
+
+        String stateStr;
+        while (true) {
+            long stamp = version.tryBeginRead();
+            if (stamp >= 0) {
+                if (snapshot != null) {
+                    stateStr = snapshot.tryTake(version, stamp);
+                    if (stateStr != null)
+                        break;
+                }
+                else {
+                    stateStr = state.asString();
+                    if (version.validate(stamp))
+                        break;
+                }
             }
+            Thread.onSpinWait();
+        }
+
+        long afterStart = clock();
+        afterShowing.run();
+        if (metrics != null) {
+            long end = clock();
+            metrics.record(CubeMetrics.SHOWS, 0, end - start, (beforeEnd - start) + (end - afterStart));
+        }
+        return stateStr;
+    }
 
-            if (showReadLockHeld)
-                showReadLock.unlock();
+    private void showIntoOptimistic(char[] dst, int dstBegin) {
+        beforeShowing.run();
 
-            if (acquisitionLock.isHeldByCurrentThread())
-                acquisitionLock.unlock();
+        while (true) {
+            long stamp = version.tryBeginRead();
+            if (stamp >= 0) {
+                state.getChars(0, state.length(), dst, dstBegin);
+                if (version.validate(stamp))
+                    break;
+            }
+            Thread.onSpinWait();
         }
+
+        afterShowing.run();
     }
 
+    private static final int noLayerSlot = -1;
+
     private final int size;
     private final Indexer indexer;
-    private final char[] state;
+    private final State state;
+    private final ShowMode showMode;
+    private final StateVersion version;
+    private final ShowSnapshot snapshot;
+    private final AtomicLong fingerprint;
+    private final FaceView[] faceViews;
+    private final RotationJournal journal;
+    private final CubeMetrics metrics;
+    private final boolean[] blockRings;
+    private final ThreadLocal<char[]> ringScratch;
+    private final int parallelThreshold;
+    private final ForkJoinPool pool;
 
     private final BiConsumer<Integer, Integer> beforeRotation;
     private final BiConsumer<Integer, Integer> afterRotation;
     private final Runnable beforeShowing;
     private final Runnable afterShowing;
 
+    private final GroupLock groupLock;
     private final ReentrantLock acquisitionLock;
     private final ReentrantReadWriteLock showLock;
-    private final HashMap<Axis, ReentrantReadWriteLock> axisLocks;
-    private final HashMap<Axis, List<ReentrantLock>> layerLocks;
+    private final ReentrantReadWriteLock[] axisLocks;
+    private final LayerLockTable layerLocks;
+    private final int layerSlotsPerAxis;
+    private final ReentrantReadWriteLock.WriteLock[] allAxesWriteLocks;
+    private final ReentrantReadWriteLock.WriteLock[][] otherAxesWriteLocks;
 }
@@ -0,0 +1,168 @@
+package solution;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+// Where the time of a cube's operations goes. For the rotations around each axis and
+// for shows, it counts the admissions and records how long they waited to be admitted,
+// how long they held the admission and how much of that went to the callbacks. A cube
+// records into the instance in CubeOptions.metrics, if any; with none, all it costs is a
+// null check per operation. Covers rotate, rotateAll (once per run of one axis) and show.
+public class CubeMetrics implements CubeMetricsMXBean {
+    public static final int SHOWS = Axis.values().length;
+    public static final String[] kinds = { "TOP_BOTTOM", "LEFT_RIGHT", "FRONT_BACK", "SHOW" };
+
+    public CubeMetrics() {
+        operations = new LongAdder[kinds.length];
+        admissionWait = new LatencyHistogram[kinds.length];
+        hold = new LatencyHistogram[kinds.length];
+        callbacks = new LatencyHistogram[kinds.length];
+        for (int kind = 0; kind < kinds.length; ++kind) {
+            operations[kind] = new LongAdder();
+            admissionWait[kind] = new LatencyHistogram();
+            hold[kind] = new LatencyHistogram();
+            callbacks[kind] = new LatencyHistogram();
+        }
+    }
+
+    // kind is an Axis ordinal or SHOWS.
+    public void record(int kind, long waitNanos, long holdNanos, long callbackNanos) {
+        operations[kind].increment();
+        admissionWait[kind].record(waitNanos);
+        hold[kind].record(holdNanos);
+        callbacks[kind].record(callbackNanos);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    // Registers these metrics with the platform MBean server as
+    // solution:type=CubeMetrics,name=<name>.
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("solution", "type", "CubeMetrics");
+        objectName = ObjectName.getInstance(objectName + ",name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public static void unregister(ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    @Override
+    public String[] getKinds() {
+        return kinds.clone();
+    }
+
+    @Override
+    public long[] getOperations() {
+        long[] counts = new long[kinds.length];
+        for (int kind = 0; kind < kinds.length; ++kind) {
+            counts[kind] = operations[kind].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public double[] getMeanAdmissionWaitMicros() {
+        return meanMicros(admissionWait);
+    }
+
+    @Override
+    public double[] getP99AdmissionWaitMicros() {
+        return quantileMicros(admissionWait, 0.99);
+    }
+
+    @Override
+    public double[] getMeanHoldMicros() {
+        return meanMicros(hold);
+    }
+
+    @Override
+    public double[] getP99HoldMicros() {
+        return quantileMicros(hold, 0.99);
+    }
+
+    @Override
+    public double[] getMeanCallbackMicros() {
+        return meanMicros(callbacks);
+    }
+
+    @Override
+    public String getSummary() {
+        return snapshot().toString();
+    }
+
+    private static double[] meanMicros(LatencyHistogram[] histograms) {
+        double[] micros = new double[histograms.length];
+        for (int kind = 0; kind < histograms.length; ++kind) {
+            micros[kind] = histograms[kind].snapshot().meanNanos() / 1e3;
+        }
+        return micros;
+    }
+
+    private static double[] quantileMicros(LatencyHistogram[] histograms, double quantile) {
+        double[] micros = new double[histograms.length];
+        for (int kind = 0; kind < histograms.length; ++kind) {
+            micros[kind] = histograms[kind].snapshot().quantileNanos(quantile) / 1e3;
+        }
+        return micros;
+    }
+
+    public static class Snapshot {
+        Snapshot(CubeMetrics metrics) {
+            operations = metrics.getOperations();
+            admissionWait = new LatencyHistogram.Snapshot[kinds.length];
+            hold = new LatencyHistogram.Snapshot[kinds.length];
+            callbacks = new LatencyHistogram.Snapshot[kinds.length];
+            for (int kind = 0; kind < kinds.length; ++kind) {
+                admissionWait[kind] = metrics.admissionWait[kind].snapshot();
+                hold[kind] = metrics.hold[kind].snapshot();
+                callbacks[kind] = metrics.callbacks[kind].snapshot();
+            }
+        }
+
+        public long operations(int kind) {
+            return operations[kind];
+        }
+
+        public LatencyHistogram.Snapshot admissionWait(int kind) {
+            return admissionWait[kind];
+        }
+
+        public LatencyHistogram.Snapshot hold(int kind) {
+            return hold[kind];
+        }
+
+        public LatencyHistogram.Snapshot callbacks(int kind) {
+            return callbacks[kind];
+        }
+
+        // One line per kind; quantiles are bucket bounds, so at most 2x over.
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format("%-12s%12s%14s%14s%14s%14s%14s%n",
+                    "kind", "ops", "wait mean", "wait p99", "hold mean", "hold p99", "callbacks"));
+            for (int kind = 0; kind < kinds.length; ++kind) {
+                builder.append(String.format("%-12s%12d%12.1fus%12.1fus%12.1fus%12.1fus%12.1fus%n", kinds[kind],
+                        operations[kind], admissionWait[kind].meanNanos() / 1e3,
+                        admissionWait[kind].quantileNanos(0.99) / 1e3, hold[kind].meanNanos() / 1e3,
+                        hold[kind].quantileNanos(0.99) / 1e3, callbacks[kind].meanNanos() / 1e3));
+            }
+            return builder.toString();
+        }
+
+        private final long[] operations;
+        private final LatencyHistogram.Snapshot[] admissionWait;
+        private final LatencyHistogram.Snapshot[] hold;
+        private final LatencyHistogram.Snapshot[] callbacks;
+    }
+
+    private final LongAdder[] operations;
+    private final LatencyHistogram[] admissionWait;
+    private final LatencyHistogram[] hold;
+    private final LatencyHistogram[] callbacks;
+}
@@ -0,0 +1,21 @@
+package solution;
+
+// The management view of CubeMetrics. Array attributes are indexed like
+// CubeMetrics.kinds: the three axes, then shows.
+public interface CubeMetricsMXBean {
+    String[] getKinds();
+
+    long[] getOperations();
+
+    double[] getMeanAdmissionWaitMicros();
+
+    double[] getP99AdmissionWaitMicros();
+
+    double[] getMeanHoldMicros();
+
+    double[] getP99HoldMicros();
+
+    double[] getMeanCallbackMicros();
+
+    String getSummary();
+}
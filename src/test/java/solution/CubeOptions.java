@@ -0,0 +1,38 @@
+package solution;
+
+import java.util.concurrent.ForkJoinPool;
+
+// Construction-time knobs of the reference cube. The defaults behave exactly like the
+// original implementation.
+public class CubeOptions {
+    public StateBackend stateBackend = StateBackend.CHARS;
+    public ShowMode showMode = ShowMode.PESSIMISTIC;
+    public AdmissionProtocol admissionProtocol = AdmissionProtocol.LOCKS;
+    public AdmissionPolicy admissionPolicy = AdmissionPolicy.FIFO;
+    // Bounds of a bypass under AdmissionPolicy.BOUNDED_BYPASS.
+    public int bypassAdmissions = 64;
+    public long bypassMicros = 100;
+    // With a positive value, each axis gets at most this many layer locks, shared by
+    // layers congruent modulo it; 0 means one lock per layer.
+    public int layerLockStripes = 0;
+    // Keep the last shown string and re-read only the faces rotated since then. It costs
+    // another char per sticker, so it is off by default and not allowed with the packed
+    // backend, whose point is to save memory.
+    public boolean showCache = false;
+    // If set, every admitted rotation is appended to it; see JournalReplay.
+    public RotationJournal journal = null;
+    // With a positive value, the ring of a rotation and a turned face are split into
+    // fork/join tasks of at most this many 4-cycles each, when they have more than that;
+    // 0 keeps every rotation on the calling thread. The tasks run in pool, or in the
+    // common pool if it is null.
+    public int parallelThreshold = 0;
+    public ForkJoinPool pool = null;
+    // Move rings made of rows of their faces (those of TOP and BOTTOM) with block copies.
+    // Only the char backend has blocks to copy, so the packed one ignores it.
+    public boolean blockCopy = true;
+    // Maintain the Zobrist fingerprint of the state on every rotation, so that
+    // fingerprint() takes constant time instead of a pass over the state.
+    public boolean fingerprint = false;
+    // If set, rotations and shows record their admission, hold and callback times in it.
+    public CubeMetrics metrics = null;
+}
@@ -0,0 +1,850 @@
+package solution;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CubeTest {
+    static Cube newCube(int size) {
+        return new Cube(size, (x, y) -> {
+        }, (x, y) -> {
+        }, () -> {
+        }, () -> {
+        });
+    }
+
+    static Cube newCube(int size, CubeOptions options,
+                        BiConsumer<Integer, Integer> beforeRotation, Runnable beforeShowing) {
+        return new Cube(size, options, beforeRotation, (x, y) -> {
+        }, beforeShowing, () -> {
+        });
+    }
+
+    // Runs a random mix of rotations and shows from several threads, logging every
+    // operation from its before-callback, and checks that replaying the log sequentially
+    // reproduces each shown state and the final one.
+    static void assertLinearizable(int size, CubeOptions options) throws InterruptedException {
+        int numThreads = 4, opsPerThread = 2000;
+
+        List<int[]> log = new ArrayList<>();
+        List<String> shownStates = new ArrayList<>();
+        ThreadLocal<Integer> showIdx = new ThreadLocal<>();
+
+        Cube cube = newCube(size, options, (side, layer) -> {
+            synchronized (log) {
+                log.add(new int[] { side, layer });
+            }
+            // Widens the window in which a wrongly admitted operation could overtake us.
+            Thread.yield();
+        }, () -> {
+            synchronized (log) {
+                showIdx.set(shownStates.size());
+                log.add(new int[] { -1, shownStates.size() });
+                shownStates.add(null);
+            }
+        });
+
+        List<Thread> threads = new ArrayList<>();
+        for (int threadIdx = 0; threadIdx < numThreads; ++threadIdx) {
+            int seed = threadIdx;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                for (int op = 0; op < opsPerThread; ++op) {
+                    if (random.nextDouble() > 0.2) {
+                        cube.rotate(random.nextInt(6), random.nextInt(size));
+                    } else {
+                        String state = cube.show();
+                        synchronized (log) {
+                            shownStates.set(showIdx.get(), state);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread: threads) {
+            thread.start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+
+        Cube ref = newCube(size);
+        for (int[] entry: log) {
+            if (entry[0] >= 0)
+                ref.rotate(entry[0], entry[1]);
+            else
+                assertEquals(ref.show(), shownStates.get(entry[1]), "show #" + entry[1]);
+        }
+        assertEquals(ref.show(), cube.show());
+    }
+
+    @Test
+    @DisplayName("The state after the moves from Validate matches the expected one.")
+    void testValidateScenario() {
+        String expected =
+                "0000" + "0000" + "0000" + "1111"
+                + "1115" + "1115" + "4444" + "1115"
+                + "2222" + "2222" + "1115" + "2222"
+                + "0333" + "0333" + "2222" + "0333"
+                + "4444" + "4444" + "0333" + "4444"
+                + "3333" + "5555" + "5555" + "5555";
+
+        Cube cube = newCube(4);
+        cube.rotate(2, 0);
+        cube.rotate(5, 1);
+        assertEquals(expected, cube.show());
+    }
+
+    @Test
+    @DisplayName("Four quarter turns of any layer restore the state.")
+    void testFourTurnsAreIdentity() {
+        for (int size = 1; size <= 6; ++size) {
+            Cube cube = newCube(size);
+            Random random = new Random(size);
+            for (int move = 0; move < 64; ++move) {
+                cube.rotate(random.nextInt(6), random.nextInt(size));
+            }
+
+            String scrambled = cube.show();
+            for (int side = 0; side < 6; ++side) {
+                for (int layer = 0; layer < size; ++layer) {
+                    for (int turn = 0; turn < 4; ++turn) {
+                        cube.rotate(side, layer);
+                    }
+                    assertEquals(scrambled, cube.show(), "side " + side + ", layer " + layer);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("rotateAll applies the moves in order and fires callbacks per move.")
+    void testRotateAll() {
+        for (AdmissionProtocol protocol: AdmissionProtocol.values()) {
+            int size = 4, numMoves = 200;
+            CubeOptions options = new CubeOptions();
+            options.admissionProtocol = protocol;
+
+            List<String> callbacks = new ArrayList<>();
+            Cube batched = new Cube(size, options,
+                    (side, layer) -> callbacks.add("before " + side + " " + layer),
+                    (side, layer) -> callbacks.add("after " + side + " " + layer),
+                    () -> {
+                    }, () -> {
+                    });
+            Cube sequential = newCube(size);
+
+            Random random = new Random(size);
+            int[] sides = new int[numMoves], layers = new int[numMoves];
+            List<String> expectedCallbacks = new ArrayList<>();
+            for (int move = 0; move < numMoves; ++move) {
+                // Biased towards one axis, so that there are runs to group.
+                sides[move] = random.nextBoolean() ? random.nextInt(6) : 5 * random.nextInt(2);
+                layers[move] = random.nextInt(size);
+                sequential.rotate(sides[move], layers[move]);
+                expectedCallbacks.add("before " + sides[move] + " " + layers[move]);
+                expectedCallbacks.add("after " + sides[move] + " " + layers[move]);
+            }
+
+            batched.rotateAll(sides, layers);
+            assertEquals(sequential.show(), batched.show());
+            assertEquals(expectedCallbacks, callbacks);
+        }
+    }
+
+    @Test
+    @DisplayName("Compiled permutations reproduce the moves of the cube.")
+    void testPermutations() {
+        assertEquals(newCube(4).show(), Permutation.initialState(4));
+        Permutation validateMoves = Permutation.ofMoves(4, new int[] { 2, 5 }, new int[] { 0, 1 });
+        Cube validateCube = newCube(4);
+        validateCube.rotate(2, 0);
+        validateCube.rotate(5, 1);
+        assertEquals(validateCube.show(), validateMoves.apply(Permutation.initialState(4)));
+
+        for (int size = 1; size <= 6; ++size) {
+            Random random = new Random(size);
+            int numMoves = 50;
+            int[] sides = new int[numMoves], layers = new int[numMoves];
+            for (int move = 0; move < numMoves; ++move) {
+                sides[move] = random.nextInt(6);
+                layers[move] = random.nextInt(size);
+            }
+
+            Permutation sequence = Permutation.ofMoves(size, sides, layers);
+            Permutation composed = Permutation.identity(size);
+            for (int move = 0; move < numMoves; ++move) {
+                composed = composed.then(Permutation.ofMove(size, sides[move], layers[move]));
+            }
+
+            Cube cube = newCube(size);
+            String initial = cube.show();
+            for (int repeat = 1; repeat <= 5; ++repeat) {
+                cube.rotateAll(sides, layers);
+                assertEquals(cube.show(), sequence.power(repeat).apply(initial), "size " + size + ", power " + repeat);
+            }
+            assertEquals(sequence.apply(initial), composed.apply(initial));
+        }
+    }
+
+    @Test
+    @DisplayName("A multi-quarter turn equals that many single turns.")
+    void testQuarterTurns() {
+        for (int size = 1; size <= 6; ++size) {
+            List<String> callbacks = new ArrayList<>();
+            Cube single = newCube(size);
+            Cube multi = new Cube(size, new CubeOptions(),
+                    (side, layer) -> callbacks.add("before " + side + " " + layer),
+                    (side, layer) -> callbacks.add("after " + side + " " + layer), () -> {
+            }, () -> {
+            });
+
+            Random random = new Random(size);
+            for (int move = 0; move < 300; ++move) {
+                int side = random.nextInt(6), layer = random.nextInt(size), quarterTurns = 1 + random.nextInt(3);
+                for (int turn = 0; turn < quarterTurns; ++turn) {
+                    single.rotate(side, layer);
+                }
+                callbacks.clear();
+                multi.rotate(side, layer, quarterTurns);
+                assertEquals(single.show(), multi.show(), "size " + size + ", move " + move);
+
+                List<String> expected = new ArrayList<>();
+                for (String event: new String[] { "before", "after" }) {
+                    for (int turn = 0; turn < quarterTurns; ++turn) {
+                        expected.add(event + " " + side + " " + layer);
+                    }
+                }
+                assertEquals(expected, callbacks);
+            }
+
+            assertThrows(IllegalArgumentException.class, () -> multi.rotate(0, 0, 0));
+            assertThrows(IllegalArgumentException.class, () -> multi.rotate(0, 0, 4));
+        }
+    }
+
+    @Test
+    @DisplayName("Block copies of ring segments match moving stickers one by one.")
+    void testBlockCopy() {
+        for (StateBackend backend: StateBackend.values()) {
+            CubeOptions stickerOptions = new CubeOptions(), blockOptions = new CubeOptions();
+            stickerOptions.stateBackend = blockOptions.stateBackend = backend;
+            stickerOptions.blockCopy = false;
+            blockOptions.blockCopy = true;
+
+            for (int size = 1; size <= 9; ++size) {
+                Cube bySticker = newCube(size, stickerOptions, (x, y) -> {
+                }, () -> {
+                });
+                Cube byBlock = newCube(size, blockOptions, (x, y) -> {
+                }, () -> {
+                });
+
+                Random random = new Random(size);
+                for (int move = 0; move < 300; ++move) {
+                    int side = random.nextInt(6), layer = random.nextInt(size), quarterTurns = 1 + random.nextInt(3);
+                    bySticker.rotate(side, layer, quarterTurns);
+                    byBlock.rotate(side, layer, quarterTurns);
+                }
+                assertEquals(bySticker.show(), byBlock.show(), backend + ", size " + size);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Fork/join rotations match the sequential ones.")
+    void testParallelRotations() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (StateBackend backend: StateBackend.values()) {
+                CubeOptions options = new CubeOptions();
+                options.stateBackend = backend;
+                options.parallelThreshold = 3;
+                options.pool = pool;
+
+                for (int size = 1; size <= 12; ++size) {
+                    Cube sequential = newCube(size);
+                    Cube parallel = newCube(size, options, (x, y) -> {
+                    }, () -> {
+                    });
+
+                    Random random = new Random(size);
+                    for (int move = 0; move < 200; ++move) {
+                        // Outer layers half of the time, as only those turn a face.
+                        int side = random.nextInt(6), quarterTurns = 1 + random.nextInt(3);
+                        int layer = random.nextBoolean() ? random.nextInt(size) : (size-1) * random.nextInt(2);
+                        sequential.rotate(side, layer, quarterTurns);
+                        parallel.rotate(side, layer, quarterTurns);
+                    }
+                    assertEquals(sequential.show(), parallel.show(), backend + ", size " + size);
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("The incremental fingerprint stays the fingerprint of the shown state.")
+    void testFingerprint() throws InterruptedException {
+        CubeOptions options = new CubeOptions();
+        options.fingerprint = true;
+
+        for (int size = 1; size <= 6; ++size) {
+            Cube cube = newCube(size, options, (x, y) -> {
+            }, () -> {
+            });
+            Cube plain = newCube(size);
+            assertEquals(Cube.fingerprint(cube.show()), cube.fingerprint());
+
+            Random random = new Random(size);
+            for (int move = 0; move < 200; ++move) {
+                int side = random.nextInt(6), layer = random.nextInt(size), quarterTurns = 1 + random.nextInt(3);
+                cube.rotate(side, layer, quarterTurns);
+                plain.rotate(side, layer, quarterTurns);
+                assertEquals(Cube.fingerprint(cube.show()), cube.fingerprint(), "size " + size + ", move " + move);
+            }
+            assertEquals(cube.fingerprint(), plain.fingerprint(), "the fingerprint does not depend on the option");
+        }
+
+        // Concurrent rotations of different layers update it concurrently too.
+        int size = 6;
+        options.admissionProtocol = AdmissionProtocol.GROUP_LOCK;
+        Cube cube = newCube(size, options, (x, y) -> {
+        }, () -> {
+        });
+        List<Thread> threads = new ArrayList<>();
+        for (int threadIdx = 0; threadIdx < 4; ++threadIdx) {
+            int seed = threadIdx;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                for (int move = 0; move < 5000; ++move) {
+                    cube.rotate(random.nextInt(6), random.nextInt(size));
+                }
+            }));
+        }
+        for (Thread thread: threads) {
+            thread.start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        assertEquals(Cube.fingerprint(cube.show()), cube.fingerprint());
+    }
+
+    @Test
+    @DisplayName("Metrics count every rotation and show and are readable over JMX.")
+    void testMetrics() throws Exception {
+        for (ShowMode showMode: ShowMode.values()) {
+            CubeOptions options = new CubeOptions();
+            options.showMode = showMode;
+            options.metrics = new CubeMetrics();
+            Cube cube = newCube(3, options, (x, y) -> {
+            }, () -> {
+            });
+
+            cube.rotate(0, 0);
+            cube.rotate(5, 2, 3);
+            cube.rotate(1, 1);
+            cube.rotateAll(new int[] { 2, 4, 2, 0 }, new int[] { 0, 1, 2, 0 });
+            cube.show();
+            cube.show();
+
+            CubeMetrics.Snapshot snapshot = options.metrics.snapshot();
+            System.out.print(snapshot);
+            // One rotateAll run per axis change: FRONT_BACK x3, then TOP_BOTTOM.
+            assertEquals(3, snapshot.operations(Axis.TOP_BOTTOM.ordinal()));
+            assertEquals(1, snapshot.operations(Axis.LEFT_RIGHT.ordinal()));
+            assertEquals(1, snapshot.operations(Axis.FRONT_BACK.ordinal()));
+            assertEquals(2, snapshot.operations(CubeMetrics.SHOWS));
+            assertEquals(2, snapshot.hold(CubeMetrics.SHOWS).count());
+            assertTrue(snapshot.hold(CubeMetrics.SHOWS).totalNanos() > 0);
+            assertTrue(snapshot.hold(CubeMetrics.SHOWS).quantileNanos(1) >= snapshot.callbacks(CubeMetrics.SHOWS).quantileNanos(0));
+
+            ObjectName name = options.metrics.register("testMetrics-" + showMode);
+            try {
+                long[] operations = (long[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Operations");
+                assertArrayEquals(new long[] { 3, 1, 1, 2 }, operations);
+            }
+            finally {
+                CubeMetrics.unregister(name);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("The packed state backend behaves like the char one.")
+    void testPackedBackend() {
+        CubeOptions options = new CubeOptions();
+        options.stateBackend = StateBackend.PACKED;
+
+        for (int size = 1; size <= 9; ++size) {
+            Cube chars = newCube(size);
+            Cube packed = new Cube(size, options, (x, y) -> {
+            }, (x, y) -> {
+            }, () -> {
+            }, () -> {
+            });
+            assertEquals(chars.show(), packed.show());
+
+            Random random = new Random(size);
+            for (int move = 0; move < 256; ++move) {
+                int side = random.nextInt(6), layer = random.nextInt(size);
+                chars.rotate(side, layer);
+                packed.rotate(side, layer);
+            }
+            assertEquals(chars.show(), packed.show(), "size " + size);
+        }
+    }
+
+    @Test
+    @DisplayName("Both admission protocols keep the operations linearizable.")
+    void testAdmissionProtocols() throws InterruptedException {
+        for (AdmissionProtocol protocol: AdmissionProtocol.values()) {
+            for (StateBackend backend: StateBackend.values()) {
+                CubeOptions options = new CubeOptions();
+                options.admissionProtocol = protocol;
+                options.stateBackend = backend;
+                assertLinearizable(4, options);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Every admission policy keeps the operations linearizable.")
+    void testAdmissionPolicies() throws InterruptedException {
+        for (AdmissionProtocol protocol: AdmissionProtocol.values()) {
+            for (AdmissionPolicy policy: AdmissionPolicy.values()) {
+                CubeOptions options = new CubeOptions();
+                options.admissionProtocol = protocol;
+                options.admissionPolicy = policy;
+                if (protocol == AdmissionProtocol.LOCKS && policy == AdmissionPolicy.BOUNDED_BYPASS) {
+                    assertThrows(IllegalArgumentException.class, () -> newCube(3, options, (x, y) -> {
+                    }, () -> {
+                    }));
+                    continue;
+                }
+                assertLinearizable(4, options);
+            }
+        }
+    }
+
+    // While a dozen threads keep rotating around one axis, which under GROUP_LOCK never
+    // lets that group drain on its own, a rotation around another axis and a show must
+    // still get in.
+    static void assertLive(CubeOptions options) throws InterruptedException {
+        int size = 3;
+        Cube cube = newCube(size, options, (x, y) -> {
+        }, () -> {
+        });
+
+        AtomicBoolean stillRunning = new AtomicBoolean(true);
+        List<Thread> fillers = new ArrayList<>();
+        for (int threadIdx = 0; threadIdx < 12; ++threadIdx) {
+            int seed = threadIdx;
+            fillers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                while (stillRunning.get()) {
+                    cube.rotate(0, random.nextInt(size));
+                }
+            }));
+        }
+        for (Thread thread: fillers) {
+            thread.start();
+        }
+        Thread.sleep(50);
+
+        Thread lateRotation = new Thread(() -> cube.rotate(1, 0));
+        Thread lateShow = new Thread(cube::show);
+        lateRotation.start();
+        lateShow.start();
+        lateRotation.join(2000);
+        lateShow.join(2000);
+        boolean rotationStarved = lateRotation.isAlive(), showStarved = lateShow.isAlive();
+
+        stillRunning.set(false);
+        for (Thread thread: fillers) {
+            thread.join();
+        }
+        lateRotation.join();
+        lateShow.join();
+
+        String config = options.admissionProtocol + ", " + options.admissionPolicy;
+        assertFalse(rotationStarved, "late rotation starved with " + config);
+        assertFalse(showStarved, "late show starved with " + config);
+    }
+
+    @Test
+    @DisplayName("The fair-enough admission policies let late operations in.")
+    void testFairPoliciesAreLive() throws InterruptedException {
+        for (AdmissionProtocol protocol: AdmissionProtocol.values()) {
+            CubeOptions options = new CubeOptions();
+            options.admissionProtocol = protocol;
+            options.admissionPolicy = AdmissionPolicy.FIFO;
+            assertLive(options);
+        }
+
+        CubeOptions options = new CubeOptions();
+        options.admissionProtocol = AdmissionProtocol.GROUP_LOCK;
+        options.admissionPolicy = AdmissionPolicy.BOUNDED_BYPASS;
+        assertLive(options);
+    }
+
+    @Test
+    @DisplayName("Striped layer locks keep the operations linearizable.")
+    void testStripedLayerLocks() throws InterruptedException {
+        CubeOptions options = new CubeOptions();
+        options.admissionProtocol = AdmissionProtocol.GROUP_LOCK;
+        options.layerLockStripes = 2;
+        assertLinearizable(5, options);
+    }
+
+    static long timeRotations(Cube cube, int numThreads, int rotationsPerThread) throws InterruptedException {
+        // Every thread turns its own inner layer of the same axis.
+        List<Thread> threads = new ArrayList<>();
+        for (int threadIdx = 0; threadIdx < numThreads; ++threadIdx) {
+            int layer = 1 + threadIdx;
+            threads.add(new Thread(() -> {
+                for (int rotation = 0; rotation < rotationsPerThread; ++rotation) {
+                    cube.rotate(0, layer);
+                }
+            }));
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread: threads) {
+            thread.start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    @DisplayName("Rotations of different layers of one axis are admitted together.")
+    void testSameAxisRotationsOverlap() throws InterruptedException {
+        int size = 5, numLayers = 3;
+        for (AdmissionProtocol protocol: AdmissionProtocol.values()) {
+            CubeOptions options = new CubeOptions();
+            options.admissionProtocol = protocol;
+
+            // Every rotation waits in its callback for all the others to be inside as well,
+            // which only happens if none of them waits for another to finish.
+            CountDownLatch inside = new CountDownLatch(numLayers);
+            AtomicBoolean allInside = new AtomicBoolean(true);
+            Cube cube = newCube(size, options, (side, layer) -> {
+                inside.countDown();
+                try {
+                    if (!inside.await(5, TimeUnit.SECONDS))
+                        allInside.set(false);
+                } catch (InterruptedException e) {
+                    allInside.set(false);
+                }
+            }, () -> {
+            });
+
+            List<Thread> threads = new ArrayList<>();
+            for (int layer = 1; layer <= numLayers; ++layer) {
+                int side = layer % 2 == 0 ? 0 : 5, sideLayer = side == 0 ? layer : size - 1 - layer;
+                threads.add(new Thread(() -> cube.rotate(side, sideLayer)));
+            }
+            for (Thread thread: threads) {
+                thread.start();
+            }
+            for (Thread thread: threads) {
+                thread.join();
+            }
+            assertTrue(allInside.get(), "same-axis rotations were serialized with " + protocol);
+        }
+    }
+
+    @Test
+    @DisplayName("Rotations of different layers of one axis scale across cores.")
+    void testSameAxisRotationsScale() throws InterruptedException {
+        // Wall-clock timing is too noisy for a shared machine, so it only runs on request.
+        Assumptions.assumeTrue(Boolean.getBoolean("cubetest.timingTests"), "needs -Dcubetest.timingTests=true");
+        int numThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+        Assumptions.assumeTrue(numThreads >= 2, "needs at least 2 cores");
+
+        // Large enough for the ring moves to dominate the admission cost.
+        int size = 512, rotationsPerThread = 20000;
+        for (AdmissionProtocol protocol: AdmissionProtocol.values()) {
+            CubeOptions options = new CubeOptions();
+            options.admissionProtocol = protocol;
+            Cube cube = new Cube(size, options, (x, y) -> {
+            }, (x, y) -> {
+            }, () -> {
+            }, () -> {
+            });
+
+            long sequential = Long.MAX_VALUE, parallel = Long.MAX_VALUE;
+            for (int attempt = 0; attempt < 3; ++attempt) {
+                // The same total work, once on one thread and once split among numThreads.
+                sequential = Math.min(sequential, timeRotations(cube, 1, numThreads * rotationsPerThread));
+                parallel = Math.min(parallel, timeRotations(cube, numThreads, rotationsPerThread));
+            }
+
+            // Ideally parallel = sequential / numThreads; we only ask for a clear speedup.
+            assertTrue(parallel < 0.8 * sequential, String.format("%s: %d threads took %.1f ms, one thread took %.1f ms",
+                    protocol, numThreads, parallel / 1e6, sequential / 1e6));
+        }
+    }
+
+    @Test
+    @DisplayName("Optimistic show never returns a torn state.")
+    void testOptimisticShow() throws InterruptedException {
+        int size = 5;
+        CubeOptions options = new CubeOptions();
+        options.showMode = ShowMode.OPTIMISTIC;
+        Cube cube = new Cube(size, options, (x, y) -> {
+        }, (x, y) -> {
+        }, () -> {
+        }, () -> {
+        });
+
+        AtomicBoolean stillRunning = new AtomicBoolean(true);
+        List<Thread> rotators = new ArrayList<>();
+        for (int threadIdx = 0; threadIdx < 2; ++threadIdx) {
+            int seed = threadIdx;
+            rotators.add(new Thread(() -> {
+                Random random = new Random(seed);
+                while (stillRunning.get()) {
+                    cube.rotate(random.nextInt(6), random.nextInt(size));
+                }
+            }));
+        }
+        for (Thread thread: rotators) {
+            thread.start();
+        }
+
+        // A snapshot taken in the middle of a 4-cycle would have one color duplicated.
+        for (int showIdx = 0; showIdx < 20000; ++showIdx) {
+            String state = cube.show();
+            int[] counts = new int[6];
+            for (int idx = 0; idx < state.length(); ++idx) {
+                ++counts[state.charAt(idx) - '0'];
+            }
+            for (int color = 0; color < 6; ++color) {
+                assertEquals(size * size, counts[color], "torn snapshot: " + state);
+            }
+        }
+
+        stillRunning.set(false);
+        for (Thread thread: rotators) {
+            thread.join();
+        }
+    }
+
+    @Test
+    @DisplayName("The show cache re-reads exactly the rotated faces.")
+    void testShowCache() {
+        CubeOptions uncachedOptions = new CubeOptions();
+
+        for (StateBackend backend: StateBackend.values()) {
+            for (ShowMode showMode: ShowMode.values()) {
+                CubeOptions options = new CubeOptions();
+                options.stateBackend = backend;
+                options.showMode = showMode;
+                options.showCache = true;
+                if (backend == StateBackend.PACKED) {
+                    assertThrows(IllegalArgumentException.class, () -> newCube(3, options, (x, y) -> {
+                    }, () -> {
+                    }));
+                    continue;
+                }
+
+                for (int size = 1; size <= 6; ++size) {
+                    Cube cached = newCube(size, options, (x, y) -> {
+                    }, () -> {
+                    });
+                    Cube uncached = newCube(size, uncachedOptions, (x, y) -> {
+                    }, () -> {
+                    });
+
+                    String shown = cached.show();
+                    assertSame(shown, cached.show(), "nothing rotated, yet the state was rebuilt");
+
+                    // Few moves between shows, so that most of them find only some faces dirty.
+                    Random random = new Random(size);
+                    for (int round = 0; round < 200; ++round) {
+                        for (int move = random.nextInt(3); move > 0; --move) {
+                            int side = random.nextInt(6), layer = random.nextInt(size);
+                            cached.rotate(side, layer);
+                            uncached.rotate(side, layer);
+                        }
+                        assertEquals(uncached.show(), cached.show(),
+                                backend + ", " + showMode + ", size " + size + ", round " + round);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("showInto and showFaces agree with show and fire the show callbacks.")
+    void testShowIntoAndFaces() {
+        int size = 4;
+        for (ShowMode showMode: ShowMode.values()) {
+            CubeOptions options = new CubeOptions();
+            options.showMode = showMode;
+            int[] callbacks = new int[2];
+            Cube cube = new Cube(size, options, (x, y) -> {
+            }, (x, y) -> {
+            }, () -> ++callbacks[0], () -> ++callbacks[1]);
+
+            char[] array = new char[6*size*size];
+            CharBuffer heapBuffer = CharBuffer.allocate(6*size*size + 3);
+            CharBuffer directBuffer = ByteBuffer.allocateDirect(2 * 6*size*size).asCharBuffer();
+            StringBuilder faces = new StringBuilder();
+
+            Random random = new Random(0);
+            for (int round = 0; round < 50; ++round) {
+                cube.rotate(random.nextInt(6), random.nextInt(size));
+                String expected = cube.show();
+
+                cube.showInto(array);
+                assertEquals(expected, new String(array));
+
+                heapBuffer.clear().position(3);
+                cube.showInto(heapBuffer);
+                assertEquals(heapBuffer.capacity(), heapBuffer.position());
+                assertEquals(expected, heapBuffer.flip().position(3).toString());
+
+                directBuffer.clear();
+                cube.showInto(directBuffer);
+                assertEquals(expected, directBuffer.flip().toString());
+
+                faces.setLength(0);
+                cube.showFaces((face, sideIndex) -> {
+                    assertEquals(faces.length(), sideIndex * size*size);
+                    faces.append(face);
+                });
+                assertEquals(expected, faces.toString());
+            }
+
+            assertEquals(5 * 50, callbacks[0], showMode.toString());
+            assertEquals(5 * 50, callbacks[1], showMode.toString());
+            assertThrows(IllegalArgumentException.class, () -> cube.showInto(new char[6*size*size - 1]));
+            assertThrows(BufferOverflowException.class, () -> cube.showInto(CharBuffer.allocate(6*size*size - 1)));
+        }
+    }
+
+    @Test
+    @DisplayName("Replaying the journal of a concurrent run reproduces its state.")
+    void testJournalReplay(@TempDir Path dir) throws InterruptedException, IOException {
+        int size = 5, numThreads = 4, rotationsPerThread = 5000;
+        Path file = dir.resolve("cube.journal");
+
+        CubeOptions options = new CubeOptions();
+        options.admissionProtocol = AdmissionProtocol.GROUP_LOCK;
+        String finalState;
+        try (RotationJournal journal = new RotationJournal(file, size, numThreads * rotationsPerThread)) {
+            options.journal = journal;
+            Cube cube = newCube(size, options, (x, y) -> {
+            }, () -> {
+            });
+
+            List<Thread> threads = new ArrayList<>();
+            for (int threadIdx = 0; threadIdx < numThreads; ++threadIdx) {
+                int seed = threadIdx;
+                threads.add(new Thread(() -> {
+                    Random random = new Random(seed);
+                    for (int rotation = 0; rotation < rotationsPerThread; ++rotation) {
+                        cube.rotate(random.nextInt(6), random.nextInt(size));
+                    }
+                }));
+            }
+            for (Thread thread: threads) {
+                thread.start();
+            }
+            for (Thread thread: threads) {
+                thread.join();
+            }
+            finalState = cube.show();
+        }
+
+        JournalReplay replay = new JournalReplay(file);
+        assertEquals(size, replay.size());
+        assertEquals(numThreads * rotationsPerThread, replay.completed());
+        assertEquals(finalState, replay.replay(replay.completed()));
+    }
+
+    @Test
+    @DisplayName("A full journal drops and counts the rotations that do not fit.")
+    void testJournalOverflow(@TempDir Path dir) throws IOException {
+        int size = 3;
+        Path file = dir.resolve("cube.journal");
+
+        Cube ref = newCube(size);
+        CubeOptions options = new CubeOptions();
+        try (RotationJournal journal = new RotationJournal(file, size, 10)) {
+            options.journal = journal;
+            Cube cube = newCube(size, options, (x, y) -> {
+            }, () -> {
+            });
+            for (int rotation = 0; rotation < 15; ++rotation) {
+                cube.rotate(rotation % 6, rotation % size);
+                if (rotation < 10)
+                    ref.rotate(rotation % 6, rotation % size);
+            }
+            assertEquals(15, journal.appended());
+        }
+
+        JournalReplay replay = new JournalReplay(file);
+        assertEquals(10, replay.completed());
+        assertEquals(5, replay.dropped());
+        assertEquals(ref.show(), replay.replay(10));
+        assertEquals(Permutation.initialState(size), replay.replay(0));
+        assertThrows(IllegalArgumentException.class, () -> replay.replay(11));
+    }
+
+    @Test
+    @DisplayName("rotate does not allocate once warmed up.")
+    void testRotateDoesNotAllocate() {
+        // The callbacks box their arguments, which only stays allocation-free within
+        // the Integer cache, so we keep the cube small enough for that.
+        int size = 16;
+        Cube cube = newCube(size);
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        int numMoves = 6 * size;
+        for (int warmup = 0; warmup < 2000; ++warmup) {
+            for (int move = 0; move < numMoves; ++move) {
+                cube.rotate(move % 6, move / 6);
+            }
+        }
+
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        for (int repeat = 0; repeat < 100; ++repeat) {
+            for (int move = 0; move < numMoves; ++move) {
+                cube.rotate(move % 6, move / 6);
+            }
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // A small slack for the measurement itself, far below a single byte per call.
+        assertTrue(allocated < 1024, "rotate allocated " + allocated + " bytes over " + 100 * numMoves + " calls");
+    }
+}
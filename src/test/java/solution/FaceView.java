@@ -0,0 +1,40 @@
+package solution;
+
+// A read-only window onto the stickers of one face, read straight from the state. It is
+// only meaningful while rotations are kept out, i.e. within Cube.showFaces.
+public class FaceView implements CharSequence {
+    public FaceView(State state, int begin, int length) {
+        this.state = state;
+        this.begin = begin;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("index " + index + " of a face of " + length + " stickers");
+        return state.get(begin + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length)
+            throw new IndexOutOfBoundsException("range " + start + ".." + end + " of a face of " + length + " stickers");
+        char[] chars = new char[end - start];
+        state.getChars(begin + start, begin + end, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+    private final State state;
+    private final int begin, length;
+}
@@ -0,0 +1,103 @@
+package solution;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
+// Admits any number of holders at once as long as they belong to the same group,
+// e.g. rotations around one axis or shows. The whole admission state, i.e. the active
+// group and the number of holders, lives in the synchronizer's int, so a compatible
+// request gets in with a single CAS. Waiters are queued in FIFO order. Whether a
+// newcomer may overtake them is up to the AdmissionPolicy; with FIFO it never does, even
+// if compatible, so no group can starve others.
+public class GroupLock {
+    public static final int SHOW_GROUP = 3;
+
+    public GroupLock(AdmissionPolicy policy, int bypassAdmissions, long bypassMicros) {
+        sync = new Sync(policy, bypassAdmissions, TimeUnit.MICROSECONDS.toNanos(bypassMicros));
+    }
+
+    public void acquire(int group) {
+        sync.acquireShared(group);
+    }
+
+    public void release(int group) {
+        sync.releaseShared(group);
+    }
+
+    private static class Sync extends AbstractQueuedSynchronizer {
+        private static final long serialVersionUID = 1L;
+
+        // state = (holders << groupBits) | group; the group is meaningless with no holders.
+        private static final int groupBits = 2;
+        private static final int groupMask = (1 << groupBits) - 1;
+
+        Sync(AdmissionPolicy policy, int bypassAdmissions, long bypassNanos) {
+            this.policy = policy;
+            this.bypassAdmissions = bypassAdmissions;
+            this.bypassNanos = bypassNanos;
+        }
+
+        @Override
+        protected int tryAcquireShared(int group) {
+            while (true) {
+                int state = getState();
+                int holders = state >>> groupBits;
+                if (holders > 0 && (state & groupMask) != group)
+                    return -1;
+
+                boolean overtaking = policy != AdmissionPolicy.UNFAIR && hasQueuedPredecessors();
+                if (overtaking && (policy == AdmissionPolicy.FIFO || !mayBypass()))
+                    return -1;
+
+                if (compareAndSetState(state, ((holders + 1) << groupBits) | group)) {
+                    // Getting in without overtaking anyone means that the waiters the
+                    // window was opened for have been admitted.
+                    if (!overtaking && bypassWindowStart.get() != 0)
+                        bypassWindowStart.set(0);
+                    return 1;
+                }
+            }
+        }
+
+        // The first overtaking newcomer opens a window, which closes once the waiters get
+        // in; until then, newcomers may overtake within the bounds. The count is reset
+        // without excluding concurrent increments, so the bound on admissions is only
+        // approximate, which is fine for a fairness knob.
+        private boolean mayBypass() {
+            long now = System.nanoTime();
+            long windowStart = bypassWindowStart.get();
+            if (windowStart == 0) {
+                // A nanoTime of exactly 0 would read as a closed window.
+                long newStart = now != 0 ? now : 1;
+                if (bypassWindowStart.compareAndSet(0, newStart)) {
+                    bypassCount.set(0);
+                    windowStart = newStart;
+                }
+                else {
+                    windowStart = bypassWindowStart.get();
+                }
+            }
+            return now - windowStart <= bypassNanos && bypassCount.incrementAndGet() <= bypassAdmissions;
+        }
+
+        @Override
+        protected boolean tryReleaseShared(int group) {
+            while (true) {
+                int state = getState();
+                int holders = (state >>> groupBits) - 1;
+                if (compareAndSetState(state, (holders << groupBits) | group))
+                    return holders == 0;
+            }
+        }
+
+        private final AdmissionPolicy policy;
+        private final int bypassAdmissions;
+        private final long bypassNanos;
+        private final AtomicLong bypassWindowStart = new AtomicLong();
+        private final AtomicInteger bypassCount = new AtomicInteger();
+    }
+
+    private final Sync sync;
+}
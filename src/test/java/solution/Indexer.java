@@ -4,6 +4,25 @@ public class Indexer {
     public Indexer(int size) {
         this.size = size;
         this.dataLength = 6*size*size;
+
+        // Every coord map is affine in the offset, so a ring segment is fully described
+        // by the index of its first sticker and the distance between consecutive ones.
+        ringBases = new int[6*size*4];
+        ringStrides = new int[6*4];
+        for (Side facingSide: Side.values()) {
+            Side[] rotatedSides = facingSide.rotatedSides();
+            for (int rotatedIdx = 0; rotatedIdx < rotatedSides.length; ++rotatedIdx) {
+                Side rotatedSide = rotatedSides[rotatedIdx];
+                for (int layer = 0; layer < size; ++layer) {
+                    ringBases[(facingSide.ordinal()*size + layer)*4 + rotatedIdx] =
+                            index(facingSide, rotatedSide, layer, 0);
+                }
+                if (size > 1) {
+                    ringStrides[facingSide.ordinal()*4 + rotatedIdx] =
+                            index(facingSide, rotatedSide, 0, 1) - index(facingSide, rotatedSide, 0, 0);
+                }
+            }
+        }
     }
 
     public int index(Side facingSide, Side rotatedSide, int layer, int offset) {
@@ -14,5 +33,17 @@ public class Indexer {
         return column + size * (row + size * rotatedSide.ordinal());
     }
 
+    // Index of the sticker at offset 0 of the segment lying on facingSide.rotatedSides()[rotatedIdx].
+    public int ringBase(Side facingSide, int layer, int rotatedIdx) {
+        return ringBases[(facingSide.ordinal()*size + layer)*4 + rotatedIdx];
+    }
+
+    // Distance between consecutive stickers of that segment; it does not depend on the layer.
+    public int ringStride(Side facingSide, int rotatedIdx) {
+        return ringStrides[facingSide.ordinal()*4 + rotatedIdx];
+    }
+
     public final int size, dataLength;
+    private final int[] ringBases;
+    private final int[] ringStrides;
 }
@@ -0,0 +1,124 @@
+package solution;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Rebuilds the state of a cube from a RotationJournal by replaying it on solution.Cube.
+//   java solution.JournalReplay <journal> [<rotations>] [--list]
+// prints the state after the first <rotations> records (by default, all the completed
+// ones) and, with --list, the replayed records themselves.
+public class JournalReplay {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: JournalReplay <journal> [<rotations>] [--list]");
+            System.exit(2);
+        }
+
+        boolean list = false;
+        long numRotations = -1;
+        for (int argIdx = 1; argIdx < args.length; ++argIdx) {
+            if (args[argIdx].equals("--list"))
+                list = true;
+            else
+                numRotations = Long.parseLong(args[argIdx]);
+        }
+
+        JournalReplay journal = new JournalReplay(Paths.get(args[0]));
+        if (numRotations < 0)
+            numRotations = journal.completed();
+
+        System.out.printf("size %d, %d completed records, %d dropped%n",
+                journal.size(), journal.completed(), journal.dropped());
+        if (list) {
+            for (long seq = 0; seq < numRotations; ++seq) {
+                System.out.printf("%d: thread %d, side %d, layer %d, at %d ns%n", seq,
+                        journal.threadId(seq), journal.side(seq), journal.layer(seq), journal.nanoTime(seq));
+            }
+        }
+        System.out.println(journal.replay(numRotations));
+    }
+
+    public JournalReplay(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(RotationJournal.magicOffset) != RotationJournal.magic)
+            throw new IOException(file + " is not a rotation journal");
+        if (buffer.getInt(RotationJournal.formatOffset) != RotationJournal.format)
+            throw new IOException(file + " has an unknown journal format " + buffer.getInt(RotationJournal.formatOffset));
+
+        size = buffer.getInt(RotationJournal.sizeOffset);
+        int capacity = buffer.getInt(RotationJournal.capacityOffset);
+
+        // Records are taken in order, so the first incomplete one ends the usable prefix.
+        int numCompleted = 0;
+        while (numCompleted < capacity && buffer.getLong(recordOffset(numCompleted) + RotationJournal.seqOffset) == numCompleted + 1)
+            ++numCompleted;
+        completed = numCompleted;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long completed() {
+        return completed;
+    }
+
+    public long dropped() {
+        return buffer.getLong(RotationJournal.droppedOffset);
+    }
+
+    public long threadId(long seq) {
+        return buffer.getLong(checkedRecordOffset(seq) + RotationJournal.threadIdOffset);
+    }
+
+    public long nanoTime(long seq) {
+        return buffer.getLong(checkedRecordOffset(seq) + RotationJournal.nanoTimeOffset);
+    }
+
+    public int side(long seq) {
+        return buffer.getInt(checkedRecordOffset(seq) + RotationJournal.sideOffset);
+    }
+
+    public int layer(long seq) {
+        return buffer.getInt(checkedRecordOffset(seq) + RotationJournal.layerOffset);
+    }
+
+    // State of the cube after the first numRotations records.
+    public String replay(long numRotations) {
+        if (numRotations < 0 || numRotations > completed)
+            throw new IllegalArgumentException("cannot replay " + numRotations + " of " + completed + " completed records");
+
+        Cube cube = new Cube(size, (x, y) -> {
+        }, (x, y) -> {
+        }, () -> {
+        }, () -> {
+        });
+        for (long seq = 0; seq < numRotations; ++seq) {
+            cube.rotate(side(seq), layer(seq));
+        }
+        return cube.show();
+    }
+
+    private static int recordOffset(long seq) {
+        return RotationJournal.headerBytes + (int) seq * RotationJournal.recordBytes;
+    }
+
+    private int checkedRecordOffset(long seq) {
+        if (seq < 0 || seq >= completed)
+            throw new IndexOutOfBoundsException("record " + seq + " of " + completed + " completed ones");
+        return recordOffset(seq);
+    }
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final long completed;
+}
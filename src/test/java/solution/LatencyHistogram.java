@@ -0,0 +1,73 @@
+package solution;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts durations in buckets of powers of two: bucket 0 holds 0 ns and bucket b > 0 holds
+// [2^(b-1), 2^b) ns. Recording is an increment of one bucket and one adder, with no
+// locks, and the buckets cover any duration with a relative error of at most 2x.
+public class LatencyHistogram {
+    public static final int numBuckets = 64;
+
+    public void record(long nanos) {
+        buckets.incrementAndGet(bucket(Math.max(nanos, 0)));
+        totalNanos.add(nanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[numBuckets];
+        for (int bucket = 0; bucket < numBuckets; ++bucket) {
+            counts[bucket] = buckets.get(bucket);
+        }
+        return new Snapshot(counts, totalNanos.sum());
+    }
+
+    static int bucket(long nanos) {
+        return Math.min(64 - Long.numberOfLeadingZeros(nanos), numBuckets - 1);
+    }
+
+    // The counts as of one moment per bucket; concurrent records may show up in some
+    // buckets and not yet in the total, or the other way round.
+    public static class Snapshot {
+        Snapshot(long[] counts, long totalNanos) {
+            this.counts = counts;
+            this.totalNanos = totalNanos;
+            long count = 0;
+            for (long bucketCount: counts) {
+                count += bucketCount;
+            }
+            this.count = count;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long totalNanos() {
+            return totalNanos;
+        }
+
+        public double meanNanos() {
+            return count > 0 ? (double) totalNanos / count : 0;
+        }
+
+        // An upper bound of the given quantile (0..1): the end of the bucket it falls in.
+        public long quantileNanos(double quantile) {
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length; ++bucket) {
+                seen += counts[bucket];
+                if (seen >= rank && seen > 0)
+                    return bucket == 0 ? 0 : bucket >= 63 ? Long.MAX_VALUE : 1L << bucket;
+            }
+            return 0;
+        }
+
+        private final long[] counts;
+        private final long totalNanos;
+        private final long count;
+    }
+
+    private final AtomicLongArray buckets = new AtomicLongArray(numBuckets);
+    private final LongAdder totalNanos = new LongAdder();
+}
@@ -0,0 +1,93 @@
+package solution;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// A flat table of FIFO ticket locks, one per slot, kept in a single array instead of
+// thousands of separately allocated lock objects. Each slot holds two counters: the next
+// ticket to hand out and the ticket being served. When padded, slots are a cache line
+// pair apart, so threads working on neighbouring layers do not invalidate each other's
+// lock words.
+//
+// Waiters spin briefly and then park. The waiters of the next waitersPerSlot tickets of a
+// slot publish themselves in waiters, and unlock wakes the one whose turn it is, so a
+// handoff never waits for a park to time out. Waiters further back park with a growing
+// timeout, as they have that many critical sections of slack to move up. The locks suit
+// short critical sections such as a single move; they are not reentrant.
+public class LayerLockTable {
+    public LayerLockTable(int numSlots, boolean padded) {
+        this.slotStride = padded ? paddedSlotStride : 2;
+        this.words = new AtomicLongArray(numSlots * slotStride);
+        this.waiters = new AtomicReferenceArray<>(numSlots * waitersPerSlot);
+    }
+
+    public void lock(int slot) {
+        int ticketIdx = slot * slotStride, servingIdx = ticketIdx + 1;
+        long ticket = words.getAndIncrement(ticketIdx);
+        int waiterIdx = waiterIdx(slot, ticket);
+
+        Thread self = null;
+        long parkNanos = minParkNanos;
+        boolean interrupted = false;
+        for (int spins = 0; ; ++spins) {
+            long serving = words.get(servingIdx);
+            if (serving == ticket)
+                break;
+
+            if (spins < maxSpins) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            // park returns at once while the interrupt flag is set, which would turn the
+            // wait into a busy loop; on a virtual thread that loop never gives up its
+            // carrier, possibly to the very thread holding the lock. So we clear the flag
+            // while waiting and restore it once the lock is ours.
+            interrupted |= Thread.interrupted();
+            if (ticket - serving < waitersPerSlot) {
+                // Publish, then re-check: either unlock sees us, or we see its update
+                // (both sides use volatile accesses), so the wakeup cannot get lost.
+                self = Thread.currentThread();
+                waiters.set(waiterIdx, self);
+                if (words.get(servingIdx) != ticket)
+                    LockSupport.park(this);
+            }
+            else {
+                LockSupport.parkNanos(this, parkNanos);
+                parkNanos = Math.min(2 * parkNanos, maxParkNanos);
+            }
+        }
+        // A later ticket may already have taken the entry over.
+        if (self != null)
+            waiters.compareAndSet(waiterIdx, self, null);
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    public void unlock(int slot) {
+        int servingIdx = slot * slotStride + 1;
+        long next = words.getPlain(servingIdx) + 1;
+        words.set(servingIdx, next);
+        // The entry may be stale (a thread served long ago); waking it is harmless, as
+        // every park here and elsewhere re-checks its condition.
+        Thread waiter = waiters.get(waiterIdx(slot, next));
+        if (waiter != null)
+            LockSupport.unpark(waiter);
+    }
+
+    private static int waiterIdx(int slot, long ticket) {
+        return slot * waitersPerSlot + (int) (ticket % waitersPerSlot);
+    }
+
+    // 16 longs = 128 bytes, i.e. two cache lines, as adjacent lines get prefetched together.
+    private static final int paddedSlotStride = 16;
+    private static final int maxSpins = 128;
+    private static final int waitersPerSlot = 8;
+    private static final long minParkNanos = 1_000;
+    private static final long maxParkNanos = 100_000;
+
+    private final int slotStride;
+    private final AtomicLongArray words;
+    private final AtomicReferenceArray<Thread> waiters;
+}
@@ -0,0 +1,80 @@
+package solution;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// Stores each sticker in 3 bits, 21 of them per long, i.e. a little over 3 bits per
+// sticker instead of the 16 of a char[]. Stickers of neighbouring layers may share a
+// word while being rotated concurrently, so words are updated with a CAS.
+public class PackedState implements State {
+    public PackedState(int length) {
+        this.length = length;
+        this.words = new long[(length + stickersPerWord - 1) / stickersPerWord];
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char get(int index) {
+        int shift = (index % stickersPerWord) * bitsPerSticker;
+        return (char)('0' + ((words[index / stickersPerWord] >>> shift) & stickerMask));
+    }
+
+    @Override
+    public void set(int index, char color) {
+        int wordIdx = index / stickersPerWord;
+        int shift = (index % stickersPerWord) * bitsPerSticker;
+        long stickerBits = (long)(color - '0') << shift;
+
+        long word = words[wordIdx];
+        while (!WORDS.weakCompareAndSet(words, wordIdx, word, (word & ~(stickerMask << shift)) | stickerBits)) {
+            word = (long) WORDS.getVolatile(words, wordIdx);
+        }
+    }
+
+    @Override
+    public void getChars(int begin, int end, char[] dst, int dstBegin) {
+        for (int index = begin; index < end; ++index) {
+            dst[dstBegin++] = get(index);
+        }
+    }
+
+    @Override
+    public void setChars(int begin, int end, char[] src, int srcBegin) {
+        for (int index = begin; index < end; ++index) {
+            set(index, src[srcBegin++]);
+        }
+    }
+
+    @Override
+    public void copy(int begin, int end, int dstBegin) {
+        for (int index = begin; index < end; ++index) {
+            set(dstBegin++, get(index));
+        }
+    }
+
+    @Override
+    public String asString() {
+        char[] chars = new char[length];
+        for (int wordIdx = 0, index = 0; wordIdx < words.length; ++wordIdx) {
+            long word = words[wordIdx];
+            for (int slot = 0; slot < stickersPerWord && index < length; ++slot, ++index) {
+                chars[index] = (char)('0' + (word & stickerMask));
+                word >>>= bitsPerSticker;
+            }
+        }
+        return new String(chars);
+    }
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final int bitsPerSticker = 3;
+    private static final int stickersPerWord = 64 / bitsPerSticker;
+    private static final long stickerMask = (1L << bitsPerSticker) - 1;
+
+    private final int length;
+    private final long[] words;
+}
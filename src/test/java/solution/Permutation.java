@@ -0,0 +1,141 @@
+package solution;
+
+// A permutation of the 6*size*size stickers, describing the effect of a move sequence:
+// applying it to a state yields the state in which the sticker at index i comes from
+// index sources[i] of the original one. Sequences of any length compile into a single
+// permutation, which then transforms any state in one pass.
+public class Permutation {
+    private Permutation(int size, int[] sources) {
+        this.size = size;
+        this.sources = sources;
+    }
+
+    public static Permutation identity(int size) {
+        int[] sources = new int[6*size*size];
+        for (int idx = 0; idx < sources.length; ++idx) {
+            sources[idx] = idx;
+        }
+        return new Permutation(size, sources);
+    }
+
+    public static Permutation ofMove(int size, int side, int layer) {
+        return ofMoves(size, new int[] { side }, new int[] { layer });
+    }
+
+    // The permutation of rotate(sides[0], layers[0]), ..., rotate(sides[k-1], layers[k-1]).
+    public static Permutation ofMoves(int size, int[] sides, int[] layers) {
+        if (sides.length != layers.length)
+            throw new IllegalArgumentException("sides and layers differ in length");
+
+        // Moving the entries of the permutation exactly like the stickers of a cube keeps
+        // each move at the cost of a rotation, instead of a full composition.
+        Permutation result = identity(size);
+        Indexer indexer = new Indexer(size);
+        for (int move = 0; move < sides.length; ++move) {
+            result.move(indexer, Side.of(sides[move]), layers[move]);
+        }
+        return result;
+    }
+
+    public static String initialState(int size) {
+        StringBuilder stateBuilder = new StringBuilder(6*size*size);
+        for (Side side: Side.values()) {
+            char sideChar = (char)('0' + side.ordinal());
+            for (int idx = 0; idx < size*size; ++idx) {
+                stateBuilder.append(sideChar);
+            }
+        }
+        return stateBuilder.toString();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // This permutation followed by next.
+    public Permutation then(Permutation next) {
+        if (next.size != size)
+            throw new IllegalArgumentException("permutations of cubes of different sizes");
+
+        int[] composed = new int[sources.length];
+        for (int idx = 0; idx < composed.length; ++idx) {
+            composed[idx] = sources[next.sources[idx]];
+        }
+        return new Permutation(size, composed);
+    }
+
+    // This permutation applied exponent times, by repeated squaring.
+    public Permutation power(long exponent) {
+        if (exponent < 0)
+            throw new IllegalArgumentException("negative exponent");
+
+        Permutation result = identity(size), square = this;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0)
+                result = result.then(square);
+            exponent >>= 1;
+            if (exponent > 0)
+                square = square.then(square);
+        }
+        return result;
+    }
+
+    public void apply(char[] state, char[] result) {
+        for (int idx = 0; idx < sources.length; ++idx) {
+            result[idx] = state[sources[idx]];
+        }
+    }
+
+    public String apply(String state) {
+        char[] result = new char[sources.length];
+        apply(state.toCharArray(), result);
+        return new String(result);
+    }
+
+    // Same cycles as Cube.rotate, performed on the entries of sources.
+    private void move(Indexer indexer, Side side, int layer) {
+        int base0 = indexer.ringBase(side, layer, 0), stride0 = indexer.ringStride(side, 0);
+        int base1 = indexer.ringBase(side, layer, 1), stride1 = indexer.ringStride(side, 1);
+        int base2 = indexer.ringBase(side, layer, 2), stride2 = indexer.ringStride(side, 2);
+        int base3 = indexer.ringBase(side, layer, 3), stride3 = indexer.ringStride(side, 3);
+        for (int offset = 0; offset < size; ++offset) {
+            cycle(base0 + offset*stride0, base1 + offset*stride1,
+                    base2 + offset*stride2, base3 + offset*stride3);
+        }
+
+        if (layer == 0) {
+            turnFace(side.ordinal(), true);
+        }
+        if (layer == size-1) {
+            turnFace(side.opposite().ordinal(), false);
+        }
+    }
+
+    private void turnFace(int face, boolean clockwise) {
+        int faceBase = face*size*size;
+        for (int x = 0; x < size/2; ++x) {
+            for (int y = 0; y < (size+1)/2; ++y) {
+                int idx0 = faceBase + x*size + y;
+                int idx1 = faceBase + y*size + (size-1-x);
+                int idx2 = faceBase + (size-1-x)*size + (size-1-y);
+                int idx3 = faceBase + (size-1-y)*size + x;
+                if (clockwise)
+                    cycle(idx0, idx1, idx2, idx3);
+                else
+                    cycle(idx3, idx2, idx1, idx0);
+            }
+        }
+    }
+
+    // The entry at idx0 moves to idx1, idx1 to idx2, idx2 to idx3 and idx3 to idx0.
+    private void cycle(int idx0, int idx1, int idx2, int idx3) {
+        int saved = sources[idx3];
+        sources[idx3] = sources[idx2];
+        sources[idx2] = sources[idx1];
+        sources[idx1] = sources[idx0];
+        sources[idx0] = saved;
+    }
+
+    private final int size;
+    private final int[] sources;
+}
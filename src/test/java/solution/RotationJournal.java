@@ -0,0 +1,98 @@
+package solution;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+// An append-only log of rotations in a memory-mapped file, meant to be written from
+// within the admission of each rotation, so that the order of the records is an order in
+// which the rotations could have run one by one. Appending is a few stores into the
+// mapping, with no system calls; the OS writes the pages back on its own.
+//
+// The file is a header followed by fixed records, all little-endian:
+//   header: magic, format version, cube size, capacity (ints), dropped records (long)
+//   record: sequence number + 1 (long), thread id (long), nanoTime (long), side, layer (ints)
+// The first field of a record is written last, so a record reading 0 there was never
+// completed. Rotations past the capacity are only counted as dropped.
+public class RotationJournal implements Closeable {
+    public RotationJournal(Path file, int size, int capacity) throws IOException {
+        if (capacity < 0 || capacity > maxCapacity)
+            throw new IllegalArgumentException("capacity " + capacity + " not in 0.." + maxCapacity);
+
+        this.file = file;
+        this.size = size;
+        this.capacity = capacity;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerBytes + (long) capacity * recordBytes);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(magicOffset, magic);
+        buffer.putInt(formatOffset, format);
+        buffer.putInt(sizeOffset, size);
+        buffer.putInt(capacityOffset, capacity);
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void append(int side, int layer) {
+        long seq = nextSeq.getAndIncrement();
+        if (seq >= capacity) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        // Absolute puts leave the buffer's position alone, so threads writing different
+        // records do not interfere.
+        int recordOffset = headerBytes + (int) seq * recordBytes;
+        buffer.putLong(recordOffset + threadIdOffset, Thread.currentThread().getId());
+        buffer.putLong(recordOffset + nanoTimeOffset, System.nanoTime());
+        buffer.putInt(recordOffset + sideOffset, side);
+        buffer.putInt(recordOffset + layerOffset, layer);
+        VarHandle.releaseFence();
+        buffer.putLong(recordOffset + seqOffset, seq + 1);
+    }
+
+    // Number of rotations appended so far, dropped ones included.
+    public long appended() {
+        return Math.min(nextSeq.get(), capacity) + dropped.get();
+    }
+
+    @Override
+    public void close() {
+        buffer.putLong(droppedOffset, dropped.get());
+        buffer.force();
+    }
+
+    static final int magic = 0x4a425543; // "CUBJ" in little-endian
+    static final int format = 1;
+
+    static final int magicOffset = 0, formatOffset = 4, sizeOffset = 8, capacityOffset = 12, droppedOffset = 16;
+    static final int headerBytes = 32;
+
+    static final int seqOffset = 0, threadIdOffset = 8, nanoTimeOffset = 16, sideOffset = 24, layerOffset = 28;
+    static final int recordBytes = 32;
+
+    // Keeps record offsets within an int, as the mapping is a single buffer.
+    public static final int maxCapacity = (Integer.MAX_VALUE - headerBytes) / recordBytes;
+
+    private final Path file;
+    private final int size;
+    private final int capacity;
+    private final MappedByteBuffer buffer;
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+}
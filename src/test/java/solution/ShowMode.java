@@ -0,0 +1,11 @@
+package solution;
+
+public enum ShowMode {
+    // show() is admitted through the same locks as rotate, so it is exclusive with
+    // every rotation for its whole duration, callbacks included.
+    PESSIMISTIC,
+    // show() takes no locks: it copies the state and retries if a rotation was moving
+    // stickers meanwhile. The snapshot is consistent, but the callbacks may overlap
+    // with rotations.
+    OPTIMISTIC
+}
@@ -0,0 +1,85 @@
+package solution;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The string last returned by show, kept together with a bitmap of the faces rotated
+// since it was built. Rotations mark the faces they touch; a show re-reads only those
+// faces into its char copy of the state, and returns the previous string outright if
+// there are none.
+public class ShowSnapshot {
+    public ShowSnapshot(int size, State state) {
+        this.faceLength = size*size;
+        this.state = state;
+        this.chars = new char[6*faceLength];
+        this.dirtyFaces = new AtomicInteger(allFaces);
+    }
+
+    // Called by rotations before they finish writing, i.e. inside the StateVersion write
+    // section in the optimistic mode.
+    public void markDirty(int faceMask) {
+        // Checking first keeps rotations of already dirty faces from bouncing the cache
+        // line of the bitmap between cores.
+        if ((dirtyFaces.get() & faceMask) != faceMask)
+            dirtyFaces.getAndAccumulate(faceMask, (dirty, mask) -> dirty | mask);
+    }
+
+    // Current state, for callers which keep rotations out while it runs.
+    public String take() {
+        lock.lock();
+        try {
+            int dirty = dirtyFaces.getAndSet(0);
+            if (dirty != 0) {
+                readFaces(dirty);
+                cached = new String(chars);
+            }
+            return cached;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // Current state as of the stamp, or null if a rotation got in the way.
+    public String tryTake(StateVersion version, long stamp) {
+        lock.lock();
+        try {
+            int dirty = dirtyFaces.getAndSet(0);
+            readFaces(dirty);
+            if (!version.validate(stamp)) {
+                // What we copied may be torn, so those faces need another read.
+                markDirty(dirty);
+                return null;
+            }
+            if (dirty != 0)
+                cached = new String(chars);
+            return cached;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public static int faceBit(Side side) {
+        return 1 << side.ordinal();
+    }
+
+    private void readFaces(int dirty) {
+        for (int face = 0; face < 6; ++face) {
+            if ((dirty & (1 << face)) != 0) {
+                int faceBase = face*faceLength;
+                state.getChars(faceBase, faceBase + faceLength, chars, faceBase);
+            }
+        }
+    }
+
+    private static final int allFaces = (1 << 6) - 1;
+
+    private final int faceLength;
+    private final State state;
+    private final char[] chars;
+    private final AtomicInteger dirtyFaces;
+    // Shows may run concurrently, but the copy is shared.
+    private final ReentrantLock lock = new ReentrantLock();
+    private String cached;
+}
@@ -8,6 +8,13 @@ import static solution.Coord.*;
 public enum Side {
     TOP, LEFT, FRONT, RIGHT, BACK, BOTTOM;
 
+    // Side.values() clones the array on every call, which the rotate path cannot afford.
+    final static Side[] valuesArray = values();
+
+    public static Side of(int index) {
+        return valuesArray[index];
+    }
+
     final static Axis[] axisArray = {
             TOP_BOTTOM, LEFT_RIGHT, FRONT_BACK,
             LEFT_RIGHT, FRONT_BACK, TOP_BOTTOM
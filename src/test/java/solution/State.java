@@ -0,0 +1,21 @@
+package solution;
+
+// Storage of the stickers, indexed as in Indexer. Colors are the characters '0'..'5'.
+public interface State {
+    int length();
+
+    char get(int index);
+
+    void set(int index, char color);
+
+    // Copies the stickers begin..end-1 into dst, starting at dstBegin, like String.getChars.
+    void getChars(int begin, int end, char[] dst, int dstBegin);
+
+    // The reverse of getChars: stores src[srcBegin..] as the stickers begin..end-1.
+    void setChars(int begin, int end, char[] src, int srcBegin);
+
+    // Copies the stickers begin..end-1 onto dstBegin.., which must not overlap them.
+    void copy(int begin, int end, int dstBegin);
+
+    String asString();
+}
@@ -0,0 +1,13 @@
+package solution;
+
+public enum StateBackend {
+    CHARS, PACKED;
+
+    public State create(int length) {
+        switch (this) {
+            case CHARS: return new CharState(length);
+            case PACKED: return new PackedState(length);
+            default: return null;
+        }
+    }
+}
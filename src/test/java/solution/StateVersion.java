@@ -0,0 +1,36 @@
+package solution;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A seqlock-style version of the state which tolerates several concurrent writers.
+// Writers bump "started" before and "finished" after moving stickers; a reader may
+// trust its copy if no write was in flight when it began and none started until it
+// finished.
+public class StateVersion {
+    public void beginWrite() {
+        started.incrementAndGet();
+    }
+
+    public void endWrite() {
+        finished.incrementAndGet();
+    }
+
+    // Returns a stamp to validate the read against, or -1 if a write is in flight.
+    public long tryBeginRead() {
+        // finished never exceeds started, so equal values read in this order mean that
+        // at the second read there was no writer in flight.
+        long finishedWrites = finished.get();
+        long startedWrites = started.get();
+        return startedWrites == finishedWrites ? startedWrites : -1;
+    }
+
+    public boolean validate(long stamp) {
+        // Keeps the plain reads of the state from drifting past the check.
+        VarHandle.acquireFence();
+        return started.get() == stamp;
+    }
+
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong finished = new AtomicLong();
+}
@@ -0,0 +1,28 @@
+package solution;
+
+// Zobrist hashing of cube states: the fingerprint of a state is the XOR of a
+// pseudo-random 64-bit key per (index, color) pair of its stickers. Moving a sticker
+// changes the fingerprint by the keys of its old and new place, so a rotation can update
+// it without looking at the untouched stickers. The keys are computed rather than stored,
+// as a table would take 48 bytes per sticker.
+public class Zobrist {
+    public static long key(int index, char color) {
+        return splitmix64(index * 6L + (color - '0'));
+    }
+
+    public static long of(CharSequence state) {
+        long fingerprint = 0;
+        for (int index = 0; index < state.length(); ++index) {
+            fingerprint ^= key(index, state.charAt(index));
+        }
+        return fingerprint;
+    }
+
+    // The finalizer of Java's SplittableRandom, a good mix of consecutive inputs.
+    private static long splitmix64(long seed) {
+        long z = seed + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}